@@ -18,16 +18,147 @@ public class ArrivalBuffer {
     private int size;
     private final int capacity;
 
+    // Running statistics, kept up to date on every enqueue/dequeue so the
+    // count* and wait time queries never walk the queue::
+    private final int[] priorityCounts = new int[4]; // index = priority (1..3)
+    private final int[] sizeCounts = new int[3];     // Small, Medium, Large
+    private long sumArrivalTicks;
+
+    // Overflow policy: null -> discard (default), otherwise spill to disk
+    private SpillSegment spill;
+
     public ArrivalBuffer(int capacity) {
         this.capacity = capacity;
         this.front = this.rear = null;
         this.size = 0;
     }
 
+    // Overflow policy SPILL: parcels that do not fit are written to the segment
+    // instead of being discarded, and come back (FIFO) as the queue drains
+    public void enableSpill(SpillSegment spill) {
+        this.spill = spill;
+    }
+
+    public SpillSegment getSpill() {
+        return spill;
+    }
+
+    // Parcels waiting on disk (not counted in size())
+    public int spilledCount() {
+        if (spill == null) {
+            return 0;
+        }
+        return spill.pendingCount();
+    }
+
     // Ekleme (enqueue)
     public boolean enqueue(Parcel parcel) {
+        if (!store(parcel)) {
+            reportOverflow(parcel);
+            return false;
+        }
+        return true;
+    }
+
+    // Çıkarma (dequeue)
+    public Parcel dequeue() {
+        Parcel removed = poll();
+        if (removed == null) {
+            System.err.println("Queue underflow! No parcels to process.");
+            return null;
+        }
+        recordDequeue(removed);
+        refillFromSpill();
+        return removed;
+    }
+
+    // Toplu ekleme: FIFO order is kept, so once a parcel is rejected every later parcel
+    // is rejected too -> the accepted parcels are always parcels[0 .. returned count)
+    public int enqueueAll(Parcel[] parcels) {
+        int accepted = 0;
+        while (accepted < parcels.length && store(parcels[accepted])) {
+            accepted++;
+        }
+        for (int i = accepted; i < parcels.length; i++) {
+            reportOverflow(parcels[i]);
+        }
+        return accepted;
+    }
+
+    // Toplu çıkarma: moves up to max parcels into dst (front first), returns how many.
+    // An empty queue is not an error here, it just returns 0.
+    public int drainTo(Parcel[] dst, int max) {
+        int limit = Math.min(max, dst.length);
+        int count = 0;
+        while (count < limit) {
+            Parcel removed = poll();
+            if (removed == null) {
+                break;
+            }
+            recordDequeue(removed);
+            dst[count++] = removed;
+            refillFromSpill();
+        }
+        return count;
+    }
+
+    // In-memory queue first; once anything is on disk newer parcels go to disk as well,
+    // otherwise they would overtake the spilled ones
+    private boolean store(Parcel parcel) {
+        if (spill == null) {
+            if (!offer(parcel)) {
+                return false;
+            }
+            recordEnqueue(parcel);
+            return true;
+        }
+        if (!spill.hasPending() && offer(parcel)) {
+            recordEnqueue(parcel);
+            return true;
+        }
+        return spill.append(parcel);
+    }
+
+    private void refillFromSpill() {
+        while (spill != null && spill.hasPending() && !isFull()) {
+            Parcel parcel = spill.peek();
+            if (parcel == null || !offer(parcel)) {
+                return; // another producer took the free slot, parcel stays on disk
+            }
+            spill.read();
+            recordEnqueue(parcel);
+        }
+    }
+
+    protected void reportOverflow(Parcel parcel) {
+        System.err.println("Queue overflow! Parcel discarded: " + parcel.getParcelID());
+    }
+
+    // Statistics hooks, called once for every parcel that enters / leaves the storage
+    protected void recordEnqueue(Parcel parcel) {
+        priorityCounts[parcel.getPriority()]++;
+        sizeCounts[sizeIndex(parcel.getSize())]++;
+        sumArrivalTicks += parcel.getArrivalTick();
+    }
+
+    protected void recordDequeue(Parcel parcel) {
+        priorityCounts[parcel.getPriority()]--;
+        sizeCounts[sizeIndex(parcel.getSize())]--;
+        sumArrivalTicks -= parcel.getArrivalTick();
+    }
+
+    protected static int sizeIndex(String size) {
+        return switch (size) {
+            case "Small" -> 0;
+            case "Medium" -> 1;
+            case "Large" -> 2;
+            default -> -1;
+        };
+    }
+
+    // Storage primitives: subclasses (ring, lanes...) override these, enqueue/dequeue stay the same
+    protected boolean offer(Parcel parcel) {
         if (isFull()) {
-            System.err.println("Queue overflow! Parcel discarded: " + parcel.getParcelID());
             return false;
         }
 
@@ -43,10 +174,8 @@ public class ArrivalBuffer {
         return true;
     }
 
-    // Çıkarma (dequeue)
-    public Parcel dequeue() {
+    protected Parcel poll() {
         if (isEmpty()) {
-            System.err.println("Queue underflow! No parcels to process.");
             return null;
         }
 
@@ -69,12 +198,24 @@ public class ArrivalBuffer {
         return front.data;
     }
 
+    // Front -> rear snapshot of the queue (visualization and debug only)
+    public Parcel[] toArray() {
+        Parcel[] parcels = new Parcel[size];
+        Node current = front;
+        int index = 0;
+        while (current != null) {
+            parcels[index++] = current.data;
+            current = current.next;
+        }
+        return parcels;
+    }
+
     public boolean isFull() {
-        return size >= capacity;
+        return size() >= capacity;
     }
 
     public boolean isEmpty() {
-        return size == 0;
+        return size() == 0;
     }
 
     public int size() {
@@ -87,11 +228,9 @@ public class ArrivalBuffer {
 
     // Debug amaçlı: kuyruğu yazdır
     public void printQueue() {
-        Node temp = front;
-        System.out.print("ArrivalBuffer [size=" + size + "]: ");
-        while (temp != null) {
-            System.out.print(temp.data.getParcelID() + " -> ");
-            temp = temp.next;
+        System.out.print("ArrivalBuffer [size=" + size() + "]: ");
+        for (Parcel parcel : toArray()) {
+            System.out.print(parcel.getParcelID() + " -> ");
         }
         System.out.println("null");
     }
@@ -115,10 +254,9 @@ public class ArrivalBuffer {
             System.out.println("+" + "-".repeat(68) + "+");
             
             // Print queue contents::
-            Node current = front;
             int position = 1;
-            while (current != null) {
-                String priority = switch(current.data.getPriority()) {
+            for (Parcel current : toArray()) {
+                String priority = switch(current.getPriority()) {
                     case 1 -> "Low";
                     case 2 -> "Medium";
                     case 3 -> "High";
@@ -126,7 +264,7 @@ public class ArrivalBuffer {
                 };
                 
                String status;
-switch (current.data.getStatus()) {
+switch (current.getStatus()) {
     case InQueue:
         status = "Queued";
         break;
@@ -145,20 +283,22 @@ switch (current.data.getStatus()) {
 }
                 System.out.printf("| %-8d | %-10s | %-8s | %-6s | %-8s | %-8d | %-8s |\n",
                     position++,
-                    current.data.getParcelID(),
+                    current.getParcelID(),
                     priority,
-                    current.data.getSize(),
-                    current.data.getDestinationCity(),
-                    current.data.getArrivalTick(),
+                    current.getSize(),
+                    current.getDestinationCity(),
+                    current.getArrivalTick(),
                     status);
-                current = current.next;
             }
         }
         
         System.out.println("+" + "-".repeat(68) + "+");
         System.out.printf("| Queue Size: %-3d | Capacity: %-3d |\n", 
-            size, 
+            size(), 
             capacity);
+        if (spill != null) {
+            System.out.printf("| Spilled to Disk: %-6d |\n", spill.pendingCount());
+        }
         System.out.println("+" + "-".repeat(68) + "+");
     }
 
@@ -228,47 +368,31 @@ switch (current.data.getStatus()) {
     }
 
     public int countPriority(int priority) {
-        int count = 0;
-        Node current = front;
-        while (current != null) {
-            if (current.data.getPriority() == priority) {
-                count++;
-            }
-            current = current.next;
+        if (priority < 1 || priority > 3) {
+            return 0;
         }
-        return count;
+        return priorityCounts[priority];
     }
 
     public int countSize(String size) {
-        int count = 0;
-        Node current = front;
-        while (current != null) {
-            if (current.data.getSize().equals(size)) {
-                count++;
-            }
-            current = current.next;
+        int index = (size == null) ? -1 : sizeIndex(size);
+        if (index < 0) {
+            return 0;
         }
-        return count;
+        return sizeCounts[index];
     }
 
+    // sum(currentTick - arrivalTick) == size * currentTick - sum(arrivalTick)
     public double getAverageWaitTime() {
-        if (isEmpty()) {
-            return 0.0;
-        }
-        
-        int totalWaitTime = 0;
-        int count = 0;
-        Node current = front;
-        int currentTick = main.Main.getCurrentTick();
-        while (current != null) {
-            totalWaitTime += (currentTick - current.data.getArrivalTick());
-            count++;
-            current = current.next;
-        }
-        if (count > 0) {
-            return (double) totalWaitTime / count;
-        } else {
+        int count = size();
+        if (count == 0) {
             return 0.0;
         }
+        long currentTick = main.Main.getCurrentTick();
+        return (double) (count * currentTick - getArrivalTickSum()) / count;
+    }
+
+    protected long getArrivalTickSum() {
+        return sumArrivalTicks;
     }
 }
@@ -0,0 +1,133 @@
+// Arrival-time index of the in-flight parcels (not DISPATCHED) of the ParcelTracker::
+// one bucket per arrival tick = an intrusive doubly linked list of record slots
+// (next/prev are primitive columns indexed by slot, like ParcelStatusIndex).
+// A bitmap of the non-empty ticks lets range scans jump over empty ticks 64 at a time,
+// so a range query or "oldest N" costs about the size of its result, never a table scan.
+
+package data_sturcts;
+import java.util.Arrays;
+
+public class ArrivalTimeIndex {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private int[][] next = new int[4][];   // slot -> next slot of the same tick, -1 = end
+    private int[][] prev = new int[4][];
+    private int[] heads = new int[64];     // tick -> first slot, -1 = empty
+    private int[] tails = new int[64];
+    private long[] nonEmpty = new long[1]; // bit per tick
+    private int size;
+
+    public ArrivalTimeIndex() {
+        Arrays.fill(heads, -1);
+        Arrays.fill(tails, -1);
+    }
+
+    // appended at the tail -> a tick lists its parcels in the order they (re)entered the index
+    public void add(int slot, int tick) {
+        ensureSlot(slot);
+        ensureTick(tick);
+        int tail = tails[tick];
+        next[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = -1;
+        prev[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = tail;
+        if (tail < 0) {
+            heads[tick] = slot;
+            nonEmpty[tick >>> 6] |= 1L << tick;
+        } else {
+            next[tail >>> CHUNK_BITS][tail & CHUNK_MASK] = slot;
+        }
+        tails[tick] = slot;
+        size++;
+    }
+
+    public void remove(int slot, int tick) {
+        int before = prev[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+        int after = next[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+        if (before < 0) {
+            heads[tick] = after;
+        } else {
+            next[before >>> CHUNK_BITS][before & CHUNK_MASK] = after;
+        }
+        if (after < 0) {
+            tails[tick] = before;
+        } else {
+            prev[after >>> CHUNK_BITS][after & CHUNK_MASK] = before;
+        }
+        if (heads[tick] < 0) {
+            nonEmpty[tick >>> 6] &= ~(1L << tick);
+        }
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Slots of the parcels that arrived in [fromTick, toTick], oldest tick first.
+     * @param limit at most this many slots are returned
+     */
+    public int[] collect(int fromTick, int toTick, int limit) {
+        int[] result = new int[Math.min(limit, size)];
+        int found = 0;
+        for (int tick = nextTick(Math.max(fromTick, 0)); tick >= 0 && tick <= toTick && found < result.length;
+                tick = nextTick(tick + 1)) {
+            for (int slot = heads[tick]; slot >= 0 && found < result.length; slot = next[slot >>> CHUNK_BITS][slot & CHUNK_MASK]) {
+                result[found++] = slot;
+            }
+        }
+        return found == result.length ? result : Arrays.copyOf(result, found);
+    }
+
+    // Frees the link arrays of a chunk whose slots were all released
+    public void releaseChunk(int chunk) {
+        next[chunk] = null;
+        prev[chunk] = null;
+    }
+
+    // first non-empty tick >= tick, -1 if none
+    private int nextTick(int tick) {
+        int word = tick >>> 6;
+        if (word >= nonEmpty.length) {
+            return -1;
+        }
+        long bits = nonEmpty[word] & (-1L << tick);
+        while (bits == 0) {
+            if (++word == nonEmpty.length) {
+                return -1;
+            }
+            bits = nonEmpty[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private void ensureSlot(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk >= next.length) {
+            int chunks = Math.max(next.length * 2, chunk + 1);
+            next = Arrays.copyOf(next, chunks);
+            prev = Arrays.copyOf(prev, chunks);
+        }
+        if (next[chunk] == null) {
+            next[chunk] = new int[CHUNK_SIZE];
+            prev[chunk] = new int[CHUNK_SIZE];
+        }
+    }
+
+    private void ensureTick(int tick) {
+        if (tick < 0) {
+            throw new IllegalArgumentException("Invalid arrival tick: " + tick);
+        }
+        if (tick < heads.length) {
+            return;
+        }
+        int ticks = Math.max(heads.length * 2, tick + 1);
+        int oldTicks = heads.length;
+        heads = Arrays.copyOf(heads, ticks);
+        tails = Arrays.copyOf(tails, ticks);
+        Arrays.fill(heads, oldTicks, ticks, -1);
+        Arrays.fill(tails, oldTicks, ticks, -1);
+        nonEmpty = Arrays.copyOf(nonEmpty, (ticks + 63) >>> 6);
+    }
+}
@@ -0,0 +1,104 @@
+// City dictionary::
+// every city name is interned once into a dense integer id (0, 1, 2 ...)
+// so per-city data can live in plain arrays indexed by that id.
+// Lookup is an open addressing (linear probing) hash table of ids.
+// Thread safety: intern is synchronized and publishes a new immutable snapshot,
+// idOf/nameOf never lock (new cities are rare, lookups are on every parcel).
+
+package data_sturcts;
+
+public class CityRegistry {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final class Snapshot {
+        final String[] names; // id -> city name
+        final int[] table;    // hash slot -> id + 1 (0 = empty)
+        final int count;
+
+        Snapshot(String[] names, int[] table, int count) {
+            this.names = names;
+            this.table = table;
+            this.count = count;
+        }
+    }
+
+    private volatile Snapshot current;
+
+    public CityRegistry() {
+        this.current = new Snapshot(new String[INITIAL_CAPACITY], new int[INITIAL_CAPACITY * 2], 0);
+    }
+
+    // id of the city, registering it first if it is new
+    public synchronized int intern(String city) {
+        if (city == null || city.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid city name");
+        }
+        int existing = idOf(city);
+        if (existing >= 0) {
+            return existing;
+        }
+        Snapshot snapshot = current;
+        int id = snapshot.count;
+        int nameCapacity = snapshot.names.length;
+        if (id == nameCapacity) {
+            nameCapacity *= 2;
+        }
+        String[] names = new String[nameCapacity];
+        System.arraycopy(snapshot.names, 0, names, 0, id);
+        names[id] = city;
+        int tableCapacity = snapshot.table.length;
+        if ((id + 1) * 2 > tableCapacity) {
+            tableCapacity *= 2;
+        }
+        current = new Snapshot(names, buildTable(names, id + 1, tableCapacity), id + 1);
+        return id;
+    }
+
+    // id of the city, or -1 if it was never registered
+    public int idOf(String city) {
+        if (city == null) {
+            return -1;
+        }
+        Snapshot snapshot = current;
+        int[] table = snapshot.table;
+        int mask = table.length - 1;
+        int slot = spread(city.hashCode()) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (snapshot.names[id].equals(city)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String nameOf(int id) {
+        Snapshot snapshot = current;
+        if (id < 0 || id >= snapshot.count) {
+            return null;
+        }
+        return snapshot.names[id];
+    }
+
+    public int size() {
+        return current.count;
+    }
+
+    private static int[] buildTable(String[] names, int count, int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = spread(names[id].hashCode()) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        return table;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,169 @@
+// Lock-free arrival queue for several intake belts (many producers, one sorter thread)::
+// bounded ring where every slot carries a sequence number (Vyukov style)
+// producers claim a slot with CAS on tail, the consumer releases it with CAS on head
+// seq == pos       -> slot is free for the producer that owns position pos
+// seq == pos + 1   -> slot holds a parcel that the consumer can take
+// no locks anywhere, a full queue is reported with a counter instead of a print
+
+package data_sturcts;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import main.*;
+
+public class ConcurrentArrivalBuffer extends ArrivalBuffer {
+    private final AtomicReferenceArray<Parcel> slots;
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next position to read
+    private final AtomicLong tail = new AtomicLong(); // next position to write
+    private final LongAdder overflowCount = new LongAdder();
+    // producers update the running statistics too, so they are atomic here
+    private final AtomicIntegerArray priorityCounts = new AtomicIntegerArray(4);
+    private final AtomicIntegerArray sizeCounts = new AtomicIntegerArray(3);
+    private final AtomicLong sumArrivalTicks = new AtomicLong();
+
+    public ConcurrentArrivalBuffer(int capacity) {
+        super(capacity);
+        int slotCount = 1;
+        while (slotCount < capacity) {
+            slotCount <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.sequence = new AtomicLongArray(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            sequence.set(i, i);
+        }
+        this.mask = slotCount - 1;
+    }
+
+    // enqueue/enqueueAll are safe to call from any number of threads.
+    // Overflow is only counted here, System.err would serialize every producer on its lock.
+    @Override
+    protected void reportOverflow(Parcel parcel) {
+        overflowCount.increment();
+    }
+
+    @Override
+    protected void recordEnqueue(Parcel parcel) {
+        priorityCounts.incrementAndGet(parcel.getPriority());
+        sizeCounts.incrementAndGet(sizeIndex(parcel.getSize()));
+        sumArrivalTicks.addAndGet(parcel.getArrivalTick());
+    }
+
+    @Override
+    protected void recordDequeue(Parcel parcel) {
+        priorityCounts.decrementAndGet(parcel.getPriority());
+        sizeCounts.decrementAndGet(sizeIndex(parcel.getSize()));
+        sumArrivalTicks.addAndGet(-parcel.getArrivalTick());
+    }
+
+    @Override
+    public int countPriority(int priority) {
+        if (priority < 1 || priority > 3) {
+            return 0;
+        }
+        return priorityCounts.get(priority);
+    }
+
+    @Override
+    public int countSize(String size) {
+        int index = (size == null) ? -1 : sizeIndex(size);
+        if (index < 0) {
+            return 0;
+        }
+        return sizeCounts.get(index);
+    }
+
+    @Override
+    protected long getArrivalTickSum() {
+        return sumArrivalTicks.get();
+    }
+
+    @Override
+    protected boolean offer(Parcel parcel) {
+        while (true) {
+            long pos = tail.get();
+            if (pos - head.get() >= getCapacity()) {
+                return false; // logical capacity reached (QUEUE_CAPACITY, not the slot count)
+            }
+            int index = (int) (pos & mask);
+            long diff = sequence.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.set(index, parcel);
+                    sequence.set(index, pos + 1); // publish to the consumer
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false; // slot from the previous lap is not consumed yet
+            }
+            // another producer took this position, retry with the new tail
+        }
+    }
+
+    @Override
+    protected Parcel poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequence.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    Parcel removed = slots.get(index);
+                    slots.set(index, null);
+                    sequence.set(index, pos + mask + 1); // free the slot for the next lap
+                    return removed;
+                }
+            } else if (diff < 0) {
+                return null; // empty, or the producer has not published yet
+            }
+        }
+    }
+
+    @Override
+    public Parcel peek() {
+        long pos = head.get();
+        int index = (int) (pos & mask);
+        if (sequence.get(index) != pos + 1) {
+            return null;
+        }
+        return slots.get(index);
+    }
+
+    @Override
+    public int size() {
+        long count = tail.get() - head.get();
+        if (count < 0) {
+            return 0;
+        }
+        return (int) Math.min(count, getCapacity());
+    }
+
+    // Best effort snapshot, parcels still being published are skipped
+    @Override
+    public Parcel[] toArray() {
+        long start = head.get();
+        long end = tail.get();
+        Parcel[] buffer = new Parcel[(int) Math.max(0, Math.min(end - start, getCapacity()))];
+        int count = 0;
+        for (long pos = start; pos < end && count < buffer.length; pos++) {
+            Parcel parcel = slots.get((int) (pos & mask));
+            if (parcel != null) {
+                buffer[count++] = parcel;
+            }
+        }
+        if (count == buffer.length) {
+            return buffer;
+        }
+        Parcel[] parcels = new Parcel[count];
+        System.arraycopy(buffer, 0, parcels, 0, count);
+        return parcels;
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+}
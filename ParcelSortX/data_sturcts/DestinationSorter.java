@@ -8,60 +8,146 @@
 
 package data_sturcts;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 import main.*;
 
 
 public class DestinationSorter {
     private static final Logger logger = Logger.getLogger(DestinationSorter.class.getName());
+    // Dispatch order inside one city::
+    // FIFO     -> oldest sorted parcel first (original behaviour)
+    // PRIORITY -> highest priority first, then earliest arrival tick
+    public enum QueueMode {
+        FIFO,
+        PRIORITY
+    }
+
+    // Size-class sub-bins of every city queue and their truck capacity units
+    private static final int SIZE_BINS = 3;                 // Small, Medium, Large
+    private static final int[] SIZE_WEIGHTS = {1, 2, 4};
+
+    // One queued parcel. Intrusive: the same node is linked into its city bin
+    // (prev/next) and into the parcel ID index (indexNext), so removing a parcel
+    // by ID is a hash lookup plus an O(1) unlink.
+    private class QueueNode {
+        Parcel data;
+        QueueNode prev;
+        QueueNode next;
+        QueueNode indexNext;        // chaining in the parcel index
+        volatile ParcelQueue owner; // queue (city) this node is linked into, null while detached
+        int lane;                   // bin index = level * SIZE_BINS + size
+        long seq;                   // link order inside the city, merges the size bins
+        
+        QueueNode(Parcel data) {
+            this.data = data;
+            this.prev = null;
+            this.next = null;
+        }
+    } 
+
     // Custom Queue implementation for parcels
+    // Every level is split into Small/Medium/Large bins (O(1) count per size, and a
+    // truck load can skip a size that does not fit without walking the queue).
+    // Dispatch order = merge of the three bin fronts of the highest non-empty level.
+    // PRIORITY mode is a bucketed queue: one level per priority (1..3), each bin kept
+    // sorted by arrival tick. New parcels almost always have the newest tick, so they
+    // are appended at the rear in O(1); only re-sorted (returned) parcels walk back.
     private class ParcelQueue {
-        private class QueueNode {
-            Parcel data;
-            QueueNode next;
-            
-            QueueNode(Parcel data) {
-                this.data = data;
-                this.next = null;
-            }
-        } 
-
-        private QueueNode front;
-        private QueueNode rear;
+        private final QueueNode[] fronts; // index = level * SIZE_BINS + size, highest level is served first
+        private final QueueNode[] rears;
+        private final int[] binSizes;
+        private final int levels;
+        private final int cityId;
         private int size;
-        public ParcelQueue() {
-            this.front = null;
-            this.rear = null;
+        private long nextSeq;
+        public ParcelQueue(int cityId) {
+            this.levels = (queueMode == QueueMode.PRIORITY) ? 3 : 1;
+            this.fronts = new QueueNode[levels * SIZE_BINS];
+            this.rears = new QueueNode[levels * SIZE_BINS];
+            this.binSizes = new int[levels * SIZE_BINS];
+            this.cityId = cityId;
             this.size = 0;
         }
         
-        public void add(Parcel parcel) {
-            QueueNode newNode = new QueueNode(parcel);
-            if (isEmpty()) {
-                front = rear = newNode;
-            } else {
-                rear.next = newNode;
-                rear = newNode;
+        public void link(QueueNode newNode) {
+            Parcel parcel = newNode.data;
+            newNode.owner = this;
+            newNode.seq = nextSeq++;
+            int level = (queueMode == QueueMode.PRIORITY) ? parcel.getPriority() - 1 : 0;
+            int lane = level * SIZE_BINS + sizeBin(parcel.getSize());
+            newNode.lane = lane;
+            QueueNode after = rears[lane];
+            if (queueMode == QueueMode.PRIORITY) {
+                // walk back past parcels that arrived later than this one
+                while (after != null && after.data.getArrivalTick() > parcel.getArrivalTick()) {
+                    after = after.prev;
+                }
             }
+            linkAfter(lane, after, newNode);
+            binSizes[lane]++;
             size++;
+            totalParcels.incrementAndGet();
+            loadIncreased(cityId);
         }
         
         public Parcel peek() {
-            if(isEmpty()) 
+            QueueNode first = peekNode();
+            if (first == null) 
             {
                 return null;
             } 
-            return front.data;
+            return first.data;
         }
-        
-        public void poll() {
-            if (isEmpty()) return;
-            front = front.next;
-            size--;
-            if (front == null) {
-                rear = null;
+
+        public QueueNode peekNode() {
+            return nextFitting(Integer.MAX_VALUE);
+        }
+
+        // First parcel in dispatch order whose size fits in `units`, null if none does
+        public QueueNode nextFitting(int units) {
+            for (int level = levels - 1; level >= 0; level--) {
+                QueueNode best = null;
+                for (int bin = 0; bin < SIZE_BINS; bin++) {
+                    QueueNode front = fronts[level * SIZE_BINS + bin];
+                    if (front != null && SIZE_WEIGHTS[bin] <= units
+                            && (best == null || dispatchesBefore(front, best))) {
+                        best = front;
+                    }
+                }
+                if (best != null) {
+                    return best;
+                }
             }
+            return null;
+        }
+        
+        // O(1) removal of any node of this queue
+        public void unlink(QueueNode node) {
+            detach(node);
+            node.owner = null;
+        }
 
+        // unlink that keeps node.owner: a lock-free reader never sees a relocating node as removed
+        public void detach(QueueNode node) {
+            if (node.prev == null) {
+                fronts[node.lane] = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                rears[node.lane] = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            binSizes[node.lane]--;
+            size--;
+            totalParcels.decrementAndGet();
+            loadDecreased(cityId);
         }
         
         public boolean isEmpty() {
@@ -72,36 +158,304 @@ public class DestinationSorter {
             return size;
         }
 
-        // Custom method to get all parcels
+        public int sizeOf(int bin) {
+            int count = 0;
+            for (int level = 0; level < levels; level++) {
+                count += binSizes[level * SIZE_BINS + bin];
+            }
+            return count;
+        }
+
+        // Custom method to get all parcels (in dispatch order)
         public Parcel[] getAllParcels() {
             Parcel[] parcels = new Parcel[size];
-            QueueNode current = front;
             int index = 0;
-            while (current != null) {
-                parcels[index++] = current.data;
-                current = current.next;
+            QueueNode[] cursors = new QueueNode[SIZE_BINS];
+            for (int level = levels - 1; level >= 0; level--) {
+                for (int bin = 0; bin < SIZE_BINS; bin++) {
+                    cursors[bin] = fronts[level * SIZE_BINS + bin];
+                }
+                while (true) {
+                    int pick = -1;
+                    for (int bin = 0; bin < SIZE_BINS; bin++) {
+                        if (cursors[bin] != null
+                                && (pick < 0 || dispatchesBefore(cursors[bin], cursors[pick]))) {
+                            pick = bin;
+                        }
+                    }
+                    if (pick < 0) {
+                        break;
+                    }
+                    parcels[index++] = cursors[pick].data;
+                    cursors[pick] = cursors[pick].next;
+                }
             }
             return parcels;
         }
+
+        // same order a single lane had before the size split
+        private boolean dispatchesBefore(QueueNode a, QueueNode b) {
+            if (queueMode == QueueMode.PRIORITY
+                    && a.data.getArrivalTick() != b.data.getArrivalTick()) {
+                return a.data.getArrivalTick() < b.data.getArrivalTick();
+            }
+            return a.seq < b.seq;
+        }
+
+        // after == null -> new node becomes the bin front
+        private void linkAfter(int lane, QueueNode after, QueueNode newNode) {
+            if (after == null) {
+                newNode.prev = null;
+                newNode.next = fronts[lane];
+                if (fronts[lane] != null) {
+                    fronts[lane].prev = newNode;
+                } else {
+                    rears[lane] = newNode;
+                }
+                fronts[lane] = newNode;
+                return;
+            }
+            newNode.prev = after;
+            newNode.next = after.next;
+            if (after.next != null) {
+                after.next.prev = newNode;
+            } else {
+                rears[lane] = newNode;
+            }
+            after.next = newNode;
+        }
+    }
+
+    // Small -> 0, Medium -> 1, Large -> 2 (unknown sizes count as Small)
+    private static int sizeBin(String size) {
+        return Math.max(0, ArrivalBuffer.sizeIndex(size));
+    }
+
+    // Truck capacity units taken by one parcel of this size
+    public static int sizeWeight(String size) {
+        return SIZE_WEIGHTS[sizeBin(size)];
     }
 
+    // parcelID -> queued node, chained hash table (chains go through QueueNode.indexNext)
+    // In concurrent mode the index is split into segments, each with its own lock.
+    private class ParcelIndex {
+        private QueueNode[] table = new QueueNode[64];
+        private int size = 0;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        QueueNode get(String parcelID) {
+            if (concurrent) lock.lock();
+            try {
+                QueueNode current = table[indexFor(parcelID, table.length)];
+                while (current != null) {
+                    if (current.data.getParcelID().equals(parcelID)) {
+                        return current;
+                    }
+                    current = current.indexNext;
+                }
+                return null;
+            } finally {
+                if (concurrent) lock.unlock();
+            }
+        }
+
+        void put(QueueNode node) {
+            if (concurrent) lock.lock();
+            try {
+                if (size >= table.length * 3 / 4) {
+                    resize();
+                }
+                int index = indexFor(node.data.getParcelID(), table.length);
+                node.indexNext = table[index];
+                table[index] = node;
+                size++;
+            } finally {
+                if (concurrent) lock.unlock();
+            }
+        }
+
+        // the node that is already indexed under its parcel ID, or null after adding this one
+        QueueNode putIfAbsent(QueueNode node) {
+            if (concurrent) lock.lock();
+            try {
+                QueueNode existing = get(node.data.getParcelID());
+                if (existing == null) {
+                    put(node);
+                }
+                return existing;
+            } finally {
+                if (concurrent) lock.unlock();
+            }
+        }
+
+        void remove(QueueNode node) {
+            if (concurrent) lock.lock();
+            try {
+                int index = indexFor(node.data.getParcelID(), table.length);
+                QueueNode current = table[index];
+                QueueNode previous = null;
+                while (current != null) {
+                    if (current == node) {
+                        if (previous == null) {
+                            table[index] = current.indexNext;
+                        } else {
+                            previous.indexNext = current.indexNext;
+                        }
+                        node.indexNext = null;
+                        size--;
+                        return;
+                    }
+                    previous = current;
+                    current = current.indexNext;
+                }
+            } finally {
+                if (concurrent) lock.unlock();
+            }
+        }
+
+        private void resize() {
+            QueueNode[] oldTable = table;
+            table = new QueueNode[oldTable.length * 2];
+            for (QueueNode head : oldTable) {
+                QueueNode current = head;
+                while (current != null) {
+                    QueueNode next = current.indexNext;
+                    int index = indexFor(current.data.getParcelID(), table.length);
+                    current.indexNext = table[index];
+                    table[index] = current;
+                    current = next;
+                }
+            }
+        }
+
+        private int indexFor(String parcelID, int length) {
+            int hash = parcelID.hashCode();
+            return (hash ^ (hash >>> 16)) & (length - 1);
+        }
+    }
+
+    // final fields -> a node read from cityNodes by a lock-free reader is always complete
     private class Node {
-        String cityName;
-        ParcelQueue parcelQueue; 
+        final String cityName;
+        final int cityId;     // dense id from cityRegistry
+        final ParcelQueue parcelQueue;
         Node left, right;
         int height; // AVL height
 
-        public Node(String cityName) {
+        public Node(String cityName, int cityId) {
             this.cityName = cityName;
-            this.parcelQueue = new ParcelQueue();
+            this.cityId = cityId;
+            this.parcelQueue = new ParcelQueue(cityId);
             this.height = 1;
         }
     }
 
     private Node root;
+    // insertBatch scratch, reused in single-threaded mode: per city id a list of batch indices
+    private int[] batchFirst = new int[0];  // city id -> first parcel of the city in the batch, -1 = none
+    private int[] batchLast = new int[0];   // city id -> last parcel of the city in the batch
+    private int[] batchNext = new int[0];   // batch index -> next parcel of the same city, -1 = end
+    private Node[] batchCities = new Node[0];
+
+    // City index: name -> dense id -> tree node, so dispatch/logging lookups are O(1).
+    // The AVL tree still owns the nodes and is used for ordered traversal.
+    private final CityRegistry cityRegistry = new CityRegistry();
+    private volatile Node[] cityNodes = new Node[8];
+    private final QueueMode queueMode;
+    private final ParcelIndex[] indexSegments;
+
+    // Concurrent mode (lockStripes > 0)::
+    // - every city queue is guarded by stripes[cityId % stripes.length]
+    // - the parcel index is split into segments with their own lock
+    // - treeLock is only taken to add a new city (AVL insert + rotations) and to walk the
+    //   tree (visualizations copy the nodes in order, then read the queues under their stripe);
+    //   dispatches on existing cities go through the city index and never touch the tree
+    // Lock order is always city stripe -> index segment, treeLock is never held with a stripe.
+    private final boolean concurrent;
+    private final ReentrantLock[] stripes;
+    private final ReentrantLock treeLock = new ReentrantLock();
+
+    // Aggregates kept up to date on every insert/remove instead of walking the tree
+    private final AtomicInteger totalParcels = new AtomicInteger();
+    private volatile int cityCount = 0;
+    // Indexed max-heap of city ids keyed by queue size (most loaded city on top).
+    // Single-threaded mode only: in concurrent mode the max is found by a scan.
+    private int[] loadHeap = new int[8];
+    private int[] heapPos = new int[8]; // city id -> index in loadHeap
+    private int heapSize = 0;
 
     public DestinationSorter() {
+        this(QueueMode.FIFO);
+    }
+
+    public DestinationSorter(QueueMode queueMode) {
+        this(queueMode, 0);
+    }
+
+    /**
+     * @param lockStripes 0 for the single-threaded sorter, otherwise the number of
+     *                    city locks (insert/dispatch on different stripes run in parallel)
+     */
+    public DestinationSorter(QueueMode queueMode, int lockStripes) {
         this.root = null;
+        this.queueMode = queueMode;
+        this.concurrent = lockStripes > 0;
+        int segments = 1;
+        if (concurrent) {
+            this.stripes = new ReentrantLock[lockStripes];
+            for (int i = 0; i < lockStripes; i++) {
+                stripes[i] = new ReentrantLock();
+            }
+            while (segments < lockStripes) {
+                segments <<= 1;
+            }
+        } else {
+            this.stripes = null;
+        }
+        this.indexSegments = new ParcelIndex[segments];
+        for (int i = 0; i < segments; i++) {
+            indexSegments[i] = new ParcelIndex();
+        }
+    }
+
+    public QueueMode getQueueMode() {
+        return queueMode;
+    }
+
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    private void lockCity(int cityId) {
+        if (concurrent) stripes[cityId % stripes.length].lock();
+    }
+
+    private void unlockCity(int cityId) {
+        if (concurrent) stripes[cityId % stripes.length].unlock();
+    }
+
+    // Two cities at once (relocation): stripes are always taken in index order, so two
+    // moves in opposite directions cannot deadlock. The same stripe twice is fine (reentrant).
+    private void lockCities(int cityA, int cityB) {
+        if (!concurrent) return;
+        int a = cityA % stripes.length;
+        int b = cityB % stripes.length;
+        stripes[Math.min(a, b)].lock();
+        stripes[Math.max(a, b)].lock();
+    }
+
+    private void unlockCities(int cityA, int cityB) {
+        if (!concurrent) return;
+        int a = cityA % stripes.length;
+        int b = cityB % stripes.length;
+        stripes[Math.max(a, b)].unlock();
+        stripes[Math.min(a, b)].unlock();
+    }
+
+    private ParcelIndex parcelIndex(String parcelID) {
+        int hash = parcelID.hashCode();
+        hash ^= hash >>> 16;
+        return indexSegments[(hash >>> 8) & (indexSegments.length - 1)];
     }
 
 
@@ -150,26 +504,188 @@ public class DestinationSorter {
     }
 
 
+    // A parcel that is already queued (e.g. re-sorted from the ReturnStack) is moved,
+    // never queued twice (also when the same parcel is inserted / relocated by several threads)
     public void insertParcel(Parcel parcel) {
-        root = insertRecursive(root, parcel);
+        Node node = findOrAddCity(parcel.getDestinationCity());
+        String parcelID = parcel.getParcelID();
+        while (true) {
+            QueueNode queued = parcelIndex(parcelID).get(parcelID);
+            ParcelQueue owner = queued == null ? null : queued.owner;
+            int ownerCity = owner == null ? node.cityId : owner.cityId;
+            lockCities(ownerCity, node.cityId);
+            try {
+                if (owner != null && owner != node.parcelQueue && queued.owner == owner) {
+                    // queued for another city -> move it, both stripes are held
+                    owner.detach(queued);
+                    queued.data = parcel;
+                    node.parcelQueue.link(queued);
+                    return;
+                }
+                if (queueParcel(node, parcel)) {
+                    return;
+                }
+            } finally {
+                unlockCities(ownerCity, node.cityId);
+            }
+            // changed while we were waiting for the locks, look again
+        }
     }
 
-    private Node insertRecursive(Node current, Parcel parcel) {
-        String city = parcel.getDestinationCity();
-        if (current == null) {
-            Node node = new Node(city);
-            node.parcelQueue.add(parcel);
+    /**
+     * Queues the parcel for the city, or moves it to the tail if it is already queued there.
+     * Caller holds the city lock.
+     * @return false if the parcel is queued for another city (or being removed),
+     *         the caller retries with both stripes
+     */
+    private boolean queueParcel(Node node, Parcel parcel) {
+        String parcelID = parcel.getParcelID();
+        QueueNode queued = parcelIndex(parcelID).get(parcelID);
+        if (queued == null) {
+            QueueNode fresh = new QueueNode(parcel);
+            fresh.owner = node.parcelQueue; // a reader that finds it in the index waits on this stripe
+            queued = parcelIndex(parcelID).putIfAbsent(fresh);
+            if (queued == null) {
+                node.parcelQueue.link(fresh);
+                return true;
+            }
+        }
+        if (queued.owner != node.parcelQueue) {
+            return false;
+        }
+        node.parcelQueue.detach(queued);
+        queued.data = parcel;
+        node.parcelQueue.link(queued);
+        return true;
+    }
+
+    // caller holds the lock of queued.owner
+    private void unlinkNode(QueueNode queued) {
+        queued.owner.unlink(queued);
+        parcelIndex(queued.data.getParcelID()).remove(queued);
+    }
+
+    /**
+     * Inserts the first n parcels of the array. Parcels are grouped by city so the
+     * city index is consulted (and the city locked) once per distinct city instead
+     * of once per parcel. Order inside a city is the same as calling insertParcel
+     * one by one.
+     * Grouping is one pass over the batch: the dense city id of every parcel links it
+     * into its city's list, so the cost is O(n) whatever the number of cities.
+     */
+    public void insertBatch(Parcel[] parcels, int n) {
+        boolean reuse = !concurrent; // concurrent callers each need their own scratch
+        int[] first = reuse ? batchFirst : new int[0];
+        int[] last = reuse ? batchLast : new int[0];
+        int[] next = reuse && batchNext.length >= n ? batchNext : new int[n];
+        Node[] cities = reuse && batchCities.length >= n ? batchCities : new Node[n];
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            Node node = findOrAddCity(parcels[i].getDestinationCity());
+            int id = node.cityId;
+            if (id >= first.length) {
+                int old = first.length;
+                first = Arrays.copyOf(first, Math.max(old * 2, id + 1));
+                last = Arrays.copyOf(last, first.length);
+                Arrays.fill(first, old, first.length, -1);
+            }
+            next[i] = -1;
+            if (first[id] < 0) {
+                first[id] = i;
+                cities[distinct++] = node;
+            } else {
+                next[last[id]] = i;
+            }
+            last[id] = i;
+        }
+        if (reuse) {
+            batchFirst = first;
+            batchLast = last;
+            batchNext = next;
+            batchCities = cities;
+        }
+        try {
+            for (int c = 0; c < distinct; c++) {
+                Node node = cities[c];
+                lockCity(node.cityId);
+                try {
+                    for (int i = first[node.cityId]; i >= 0; i = next[i]) {
+                        batchQueue(node, parcels[i]);
+                    }
+                } finally {
+                    unlockCity(node.cityId);
+                }
+            }
+        } finally {
+            for (int c = 0; c < distinct; c++) {
+                first[cities[c].cityId] = -1; // only the touched cities are reset
+                cities[c] = null;
+            }
+        }
+    }
+
+    // caller holds the city lock; a parcel still queued for another city takes the
+    // insertParcel path (both stripes), the city lock is given up meanwhile
+    private void batchQueue(Node node, Parcel parcel) {
+        if (!queueParcel(node, parcel)) {
+            unlockCity(node.cityId);
+            try {
+                insertParcel(parcel);
+            } finally {
+                lockCity(node.cityId);
+            }
+        }
+    }
+
+    // Tree is only restructured here, when a city is seen for the first time
+    private Node findOrAddCity(String city) {
+        Node node = findCityNode(city);
+        if (node != null) {
             return node;
         }
+        if (concurrent) treeLock.lock();
+        try {
+            node = findCityNode(city); // another thread may have added it meanwhile
+            if (node == null) {
+                root = insertRecursive(root, city);
+                node = findCityNode(city);
+            }
+            return node;
+        } finally {
+            if (concurrent) treeLock.unlock();
+        }
+    }
+
+    // caller holds treeLock
+    private Node createCityNode(String city) {
+        int cityId = cityRegistry.intern(city);
+        Node node = new Node(city, cityId);
+        // copy-on-write: the new node is only published by the volatile write of the array
+        // (a plain store into the shared array would not be a safe publication)
+        Node[] nodes = cityNodes;
+        Node[] published = new Node[cityId >= nodes.length ? Math.max(nodes.length * 2, cityId + 1) : nodes.length];
+        System.arraycopy(nodes, 0, published, 0, nodes.length);
+        published[cityId] = node;
+        cityNodes = published;
+        cityCount++;
+        if (!concurrent) {
+            addToLoadHeap(cityId);
+        }
+        return node;
+    }
+
+    private Node insertRecursive(Node current, String city) {
+        if (current == null) {
+            return createCityNode(city);
+        }
 
         int cmp = city.compareTo(current.cityName);
         if (cmp == 0) {
-            current.parcelQueue.add(parcel);
             return current;
         } else if (cmp < 0) {
-            current.left = insertRecursive(current.left, parcel);
+            current.left = insertRecursive(current.left, city);
         } else {
-            current.right = insertRecursive(current.right, parcel);
+            current.right = insertRecursive(current.right, city);
         }
 
         // Update height of current node
@@ -202,35 +718,178 @@ public class DestinationSorter {
     }
 
     public Parcel getNextParcelForCity(String city) {
-        Node node = findCityNode(root, city);
-        if (node != null && !node.parcelQueue.isEmpty()) {
+        Node node = findCityNode(city);
+        if (node == null) {
+            return null;
+        }
+        lockCity(node.cityId);
+        try {
             return node.parcelQueue.peek();
+        } finally {
+            unlockCity(node.cityId);
         }
-        return null;
     }
 
-    public void removeParcel(String city, String parcelID) {
-        Node node = findCityNode(root, city);
-        if (node != null && !node.parcelQueue.isEmpty()) {
-            Parcel first = node.parcelQueue.peek();
-            if (first.getParcelID().equals(parcelID)) {
-                node.parcelQueue.poll();
-                logger.info(String.format("Parcel %s removed from %s",
-                    parcelID, city));
+    /**
+     * Removes the parcel from the city queue wherever it is (not only the head).
+     * @return false if the parcel is not queued for that city
+     */
+    public boolean removeParcel(String city, String parcelID) {
+        Node node = findCityNode(city);
+        if (node == null) {
+            return false;
+        }
+        QueueNode queued = parcelIndex(parcelID).get(parcelID);
+        if (queued == null) {
+            return false;
+        }
+        lockCity(node.cityId);
+        try {
+            if (queued.owner != node.parcelQueue) {
+                return false;
             }
+            unlinkNode(queued);
+        } finally {
+            unlockCity(node.cityId);
+        }
+        logger.info(String.format("Parcel %s removed from %s",
+            parcelID, city));
+        return true;
+    }
+
+    /**
+     * Moves a queued parcel to another destination (re-route). The parcel keeps
+     * its priority and arrival tick, so it lands in the right place of the new queue.
+     * Both city stripes are held for the whole move and the parcelID index entry is kept,
+     * so the parcel is never out of every queue (a concurrent insertParcel of the same
+     * parcel waits and then moves it, it cannot queue it twice).
+     * Only the sorter is changed: the caller updates the tracker with
+     * ParcelTracker.updateDestination, the sorter does not know the tracker.
+     * @return false if the parcel is not in the sorter
+     */
+    public boolean relocateParcel(String parcelID, String newCity) {
+        if (newCity == null || newCity.trim().isEmpty()) {
+            return false;
+        }
+        Node target = null;
+        while (true) {
+            QueueNode queued = parcelIndex(parcelID).get(parcelID);
+            if (queued == null) {
+                return false;
+            }
+            ParcelQueue owner = queued.owner;
+            if (owner == null) {
+                return false; // just removed by another thread
+            }
+            if (target == null) {
+                // only now, an unknown parcel must not leave an empty city behind
+                target = findOrAddCity(newCity); // may take treeLock, never held together with a stripe
+            }
+            if (owner == target.parcelQueue) {
+                return true; // already queued for that city
+            }
+            lockCities(owner.cityId, target.cityId);
+            try {
+                if (queued.owner != owner) {
+                    continue; // moved while we were waiting for the locks, look again
+                }
+                String oldCity = queued.data.getDestinationCity();
+                owner.detach(queued); // owner stays set until link() switches it to the new queue
+                queued.data.setDestinationCity(newCity);
+                target.parcelQueue.link(queued); // reuse the node, no allocation
+                logger.info(String.format("Parcel %s relocated from %s to %s",
+                    parcelID, oldCity, newCity));
+                return true;
+            } finally {
+                unlockCities(owner.cityId, target.cityId);
+            }
+        }
+    }
+
+    public boolean containsParcel(String parcelID) {
+        return parcelIndex(parcelID).get(parcelID) != null;
+    }
+
+    // Consistent copy of one city queue (dispatch order), safe in concurrent mode
+    private Parcel[] parcelsOf(Node node) {
+        lockCity(node.cityId);
+        try {
+            return node.parcelQueue.getAllParcels();
+        } finally {
+            unlockCity(node.cityId);
+        }
+    }
+
+    // Queue size under the city stripe (size is not volatile)
+    private int sizeOf(Node node) {
+        lockCity(node.cityId);
+        try {
+            return node.parcelQueue.size();
+        } finally {
+            unlockCity(node.cityId);
         }
     }
 
     public int countCityParcels(String city) {
-        Node node = findCityNode(root, city);
+        Node node = findCityNode(city);
         if(node != null)
         {
-            return node.parcelQueue.size();
+            return sizeOf(node);
         }
         return 0;
 
     }
 
+    // O(1): Small/Medium/Large bins keep their own counts
+    public int countCityParcels(String city, String size) {
+        Node node = findCityNode(city);
+        if (node == null) {
+            return 0;
+        }
+        lockCity(node.cityId);
+        try {
+            return node.parcelQueue.sizeOf(sizeBin(size));
+        } finally {
+            unlockCity(node.cityId);
+        }
+    }
+
+    /**
+     * Truck-load dispatch: takes the city's parcels in dispatch order and skips the
+     * ones that no longer fit, until capacityUnits are used up or nothing fits
+     * (Small = 1, Medium = 2, Large = 4 units). One lock / lookup for the whole load.
+     * @return the loaded parcels (already removed from the sorter), in load order
+     */
+    public Parcel[] dispatchLoad(String city, int capacityUnits) {
+        Node node = findCityNode(city);
+        if (node == null || capacityUnits <= 0) {
+            return new Parcel[0];
+        }
+        Parcel[] load;
+        int count = 0;
+        int remaining = capacityUnits;
+        lockCity(node.cityId);
+        try {
+            load = new Parcel[Math.min(capacityUnits, node.parcelQueue.size())];
+            QueueNode next;
+            while ((next = node.parcelQueue.nextFitting(remaining)) != null) {
+                unlinkNode(next);
+                load[count++] = next.data;
+                remaining -= SIZE_WEIGHTS[next.lane % SIZE_BINS];
+            }
+        } finally {
+            unlockCity(node.cityId);
+        }
+        if (count < load.length) {
+            Parcel[] trimmed = new Parcel[count];
+            System.arraycopy(load, 0, trimmed, 0, count);
+            load = trimmed;
+        }
+        logger.info(String.format("Truck load for %s: %d parcel(s), %d/%d units",
+            city, count, capacityUnits - remaining, capacityUnits));
+        return load;
+    }
+
     public int getDispatchedCount(String city) {
         logger.warning("getDispatchedCount called directly - use ParcelTracker instead");
         return 0;
@@ -260,98 +919,197 @@ public class DestinationSorter {
         return getDispatchedCount(city);  // Use single source of truth
     }
 
-    private Node findCityNode(Node current, String city) {
-        if (current == null || city == null) return null;
-        int cmp = city.compareTo(current.cityName);
-        if (cmp == 0) return current;
-        else if (cmp < 0) return findCityNode(current.left, city);
-        else return findCityNode(current.right, city);
+    // null also while another thread is still creating the node (caller falls back to treeLock)
+    private Node findCityNode(String city) {
+        int id = cityRegistry.idOf(city);
+        if (id < 0) return null;
+        Node[] nodes = cityNodes;
+        if (id >= nodes.length) return null;
+        return nodes[id];
     }
 
+    // Every node already stores its AVL height (kept by insert and the rotations)
     public int getHeight() {
-        return heightRecursive(root);
-    }
-
-    private int heightRecursive(Node current) {
-        if (current == null) return 0;
-        return 1 + Math.max(
-            heightRecursive(current.left),
-            heightRecursive(current.right)
-        );
+        if (concurrent) treeLock.lock();
+        try {
+            return getHeight(root);
+        } finally {
+            if (concurrent) treeLock.unlock();
+        }
     }
 
+    // Top of the load heap plus every city tied with it ("A and B")
     public String getCityWithMaxParcels() {
         if (root == null) return null;
+        if (concurrent) {
+            return scanCityWithMaxParcels();
+        }
+        int maxCount = loadOf(loadHeap[0]);
+        StringBuilder tiedCities = new StringBuilder();
+        appendTiedCities(0, maxCount, tiedCities);
+        return tiedCities.toString();
+    }
+
+    // Only subtrees whose root has the max load can contain more ties
+    private void appendTiedCities(int index, int maxCount, StringBuilder tiedCities) {
+        if (index >= heapSize || loadOf(loadHeap[index]) != maxCount) {
+            return;
+        }
+        if (tiedCities.length() > 0) {
+            tiedCities.append(" and ");
+        }
+        tiedCities.append(cityNodes[loadHeap[index]].cityName);
+        appendTiedCities(2 * index + 1, maxCount, tiedCities);
+        appendTiedCities(2 * index + 2, maxCount, tiedCities);
+    }
+
+    // O(cities) fallback for concurrent mode, cities in registration order
+    private String scanCityWithMaxParcels() {
         int maxCount = -1;
         StringBuilder tiedCities = new StringBuilder();
-        
-        // Check each city explicitly using dispatched count
-        String[] cities = {"Istanbul", "Ankara", "Izmir", "Bursa", "Antalya"};
-        for (String city : cities) {
-            int count = countCityParcels(city);  // Use countCityParcels instead of getDispatchedCount
-            if (count > maxCount) {
-                maxCount = count;
-                tiedCities = new StringBuilder(city);
-            } else if (count == maxCount) {
-                if (tiedCities.length() > 0) {
-                    tiedCities.append(" and ");
-                }
-                tiedCities.append(city);
+        Node[] nodes = cityNodes;
+        int count = Math.min(cityRegistry.size(), nodes.length);
+        for (int id = 0; id < count; id++) {
+            Node node = nodes[id];
+            if (node == null) continue;
+            int load = sizeOf(node);
+            if (load > maxCount) {
+                maxCount = load;
+                tiedCities = new StringBuilder(node.cityName);
+            } else if (load == maxCount) {
+                tiedCities.append(" and ").append(node.cityName);
             }
         }
         return tiedCities.toString();
     }
 
+    private int loadOf(int cityId) {
+        return cityNodes[cityId].parcelQueue.size();
+    }
+
+    private void addToLoadHeap(int cityId) {
+        if (heapSize == loadHeap.length) {
+            int[] grown = new int[loadHeap.length * 2];
+            System.arraycopy(loadHeap, 0, grown, 0, heapSize);
+            loadHeap = grown;
+        }
+        if (cityId >= heapPos.length) {
+            int[] grown = new int[Math.max(heapPos.length * 2, cityId + 1)];
+            System.arraycopy(heapPos, 0, grown, 0, heapPos.length);
+            heapPos = grown;
+        }
+        loadHeap[heapSize] = cityId;
+        heapPos[cityId] = heapSize;
+        heapSize++;
+        siftUp(heapSize - 1);
+    }
+
+    private void loadIncreased(int cityId) {
+        if (!concurrent) siftUp(heapPos[cityId]);
+    }
+
+    private void loadDecreased(int cityId) {
+        if (!concurrent) siftDown(heapPos[cityId]);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (loadOf(loadHeap[parent]) >= loadOf(loadHeap[index])) {
+                return;
+            }
+            swapHeap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int largest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && loadOf(loadHeap[left]) > loadOf(loadHeap[largest])) {
+                largest = left;
+            }
+            if (right < heapSize && loadOf(loadHeap[right]) > loadOf(loadHeap[largest])) {
+                largest = right;
+            }
+            if (largest == index) {
+                return;
+            }
+            swapHeap(index, largest);
+            index = largest;
+        }
+    }
+
+    private void swapHeap(int i, int j) {
+        int cityI = loadHeap[i];
+        int cityJ = loadHeap[j];
+        loadHeap[i] = cityJ;
+        loadHeap[j] = cityI;
+        heapPos[cityJ] = i;
+        heapPos[cityI] = j;
+    }
+
     /**
      * Visualizes the parcel distribution across all cities
      */
     public void visualizeParcelDistribution() {
         System.out.println("\n=== Parcel Distribution ===");
-        visualizeParcelDistributionRecursive(root);
+        for (Node node : citiesInOrder()) {
+            System.out.printf("%-15s: ", node.cityName);
+            int parcelCount = sizeOf(node);
+            int barLength = Math.max(1, parcelCount / 2); // Scale the bar length
+            System.out.print("[");
+            for (int i = 0; i < barLength; i++) {
+                System.out.print("x");
+            }
+            System.out.printf("] %d parcels\n", parcelCount);
+        }
         System.out.println("==========================\n");
     }
 
-    /**
-     * Recursive helper method to visualize parcel distribution
-     */
-    private void visualizeParcelDistributionRecursive(Node node) {
-        if (node == null) {
-            return;
+    // Cities in alphabetical order, copied under treeLock so the walk never sees a rotation
+    // half done. The queues are read afterwards, under their own stripe.
+    private Node[] citiesInOrder() {
+        if (concurrent) treeLock.lock();
+        try {
+            Node[] nodes = new Node[cityCount];
+            int count = collectInOrder(root, nodes, 0);
+            return count == nodes.length ? nodes : Arrays.copyOf(nodes, count);
+        } finally {
+            if (concurrent) treeLock.unlock();
         }
+    }
 
-        // Process left subtree
-        visualizeParcelDistributionRecursive(node.left);
-
-        // Print current node's parcel distribution
-        System.out.printf("%-15s: ", node.cityName);
-        int parcelCount = node.parcelQueue.size();
-        int barLength = Math.max(1, parcelCount / 2); // Scale the bar length
-        System.out.print("[");
-        for (int i = 0; i < barLength; i++) {
-            System.out.print("x");
+    private int collectInOrder(Node node, Node[] nodes, int count) {
+        if (node == null || count == nodes.length) {
+            return count;
         }
-        System.out.printf("] %d parcels\n", parcelCount);
-
-        // Process right subtree
-        visualizeParcelDistributionRecursive(node.right);
+        count = collectInOrder(node.left, nodes, count);
+        if (count < nodes.length) {
+            nodes[count++] = node;
+        }
+        return collectInOrder(node.right, nodes, count);
     }
 
 
     public void visualizeCityDetails(String city) {
-        Node node = findCityNode(root, city);
+        Node node = findCityNode(city);
         if (node == null) {
             System.out.println("\nCity not found: " + city);
             return;
         }
 
         System.out.println("\n=== Detailed View for " + city + " ===");
-        System.out.println("Total Parcels: " + node.parcelQueue.size());
+        Parcel[] parcels = parcelsOf(node);
+        System.out.println("Total Parcels: " + parcels.length);
         
-        if (!node.parcelQueue.isEmpty()) {
+        if (parcels.length > 0) {
             System.out.println("\nParcel Queue:");
             System.out.println("-------------");
             int count = 1;
-            for (Parcel parcel : node.parcelQueue.getAllParcels()) {
+            for (Parcel parcel : parcels) {
                 System.out.printf("%d. Parcel %s (Priority: %d, Size: %s)\n",
                     count++,
                     parcel.getParcelID(),
@@ -377,15 +1135,8 @@ public class DestinationSorter {
     /**
      * Helper method to count total number of cities in the tree
      */
-    private int countTotalCities() {
-        return countTotalCitiesRecursive(root);
-    }
-
-    private int countTotalCitiesRecursive(Node node) {
-        if (node == null) {
-            return 0;
-        }
-        return 1 + countTotalCitiesRecursive(node.left) + countTotalCitiesRecursive(node.right);
+    public int countTotalCities() {
+        return cityCount;
     }
 
     /**
@@ -393,44 +1144,28 @@ public class DestinationSorter {
      */
     public void visualizeQueues() {
         System.out.println("\n=== Parcel Queues Status ===");
-        visualizeQueuesRecursive(root);
-        System.out.println("==========================\n");
-    }
-
-    /**
-     * Recursive helper method to visualize queues
-     */
-    private void visualizeQueuesRecursive(Node node) {
-        if (node == null) {
-            return;
-        }
-
-        // Process left subtree first (alphabetical order)
-        visualizeQueuesRecursive(node.left);
-
-        // Print current node's queue
-        System.out.println("\nCity: " + node.cityName);
-        System.out.println("Queue Size: " + node.parcelQueue.size());
-        
-        if (!node.parcelQueue.isEmpty()) {
-            System.out.println("Current Queue:");
-            System.out.println("-------------");
-            int position = 1;
-            Parcel[] parcels = node.parcelQueue.getAllParcels();
-            for (Parcel parcel : parcels) {
-                System.out.printf("%d. [%s] Priority: %d, Size: %s\n",
-                    position++,
-                    parcel.getParcelID(),
-                    parcel.getPriority(),
-                    parcel.getSize());
+        for (Node node : citiesInOrder()) {  // alphabetical order
+            Parcel[] parcels = parcelsOf(node);
+            System.out.println("\nCity: " + node.cityName);
+            System.out.println("Queue Size: " + parcels.length);
+            
+            if (parcels.length > 0) {
+                System.out.println("Current Queue:");
+                System.out.println("-------------");
+                int position = 1;
+                for (Parcel parcel : parcels) {
+                    System.out.printf("%d. [%s] Priority: %d, Size: %s\n",
+                        position++,
+                        parcel.getParcelID(),
+                        parcel.getPriority(),
+                        parcel.getSize());
+                }
+            } else {
+                System.out.println("Queue is empty");
             }
-        } else {
-            System.out.println("Queue is empty");
+            System.out.println("-------------");
         }
-        System.out.println("-------------");
-
-        // Process right subtree
-        visualizeQueuesRecursive(node.right);
+        System.out.println("==========================\n");
     }
 
     /**
@@ -438,26 +1173,23 @@ public class DestinationSorter {
      */
     public void visualizeQueuesASCII() {
         System.out.println("\n=== Parcel Queues ASCII Visualization ===");
-        visualizeQueuesASCIIRecursive(root);
+        for (Node node : citiesInOrder()) {  // alphabetical order
+            visualizeQueueASCII(node);
+        }
         System.out.println("=======================================\n");
     }
 
     /**
-     * Recursive helper method to visualize queues in ASCII
+     * Helper method to visualize one city queue in ASCII
      */
-    private void visualizeQueuesASCIIRecursive(Node node) {
-        if (node == null) {
-            return;
-        }
-
-        // Process left subtree first (alphabetical order)
-        visualizeQueuesASCIIRecursive(node.left);
+    private void visualizeQueueASCII(Node node) {
+        Parcel[] parcels = parcelsOf(node);
 
         // Print current node's queue in ASCII
         System.out.println("\n" + node.cityName + " Queue:");
         System.out.println("+" + "-".repeat(40) + "+");
         
-        if (!node.parcelQueue.isEmpty()) {
+        if (parcels.length > 0) {
             // Print queue header
             System.out.println("| " + String.format("%-8s", "Position") + " | " + 
                              String.format("%-10s", "Parcel ID") + " | " + 
@@ -467,7 +1199,6 @@ public class DestinationSorter {
             
             // Print each parcel in the queue
             int position = 1;
-            Parcel[] parcels = node.parcelQueue.getAllParcels();
             for (Parcel parcel : parcels) {
                 String priority = switch(parcel.getPriority()) {
                     case 1 -> "Low";
@@ -489,14 +1220,16 @@ public class DestinationSorter {
         }
         
         System.out.println("+" + "-".repeat(40) + "+");
-        System.out.println("Total in Queue: " + node.parcelQueue.size());
-
-        // Process right subtree
-        visualizeQueuesASCIIRecursive(node.right);
+        System.out.println("Total in Queue: " + parcels.length);
     }
 
     public boolean verifyBalance() {
-        return verifyBalanceRecursive(root);
+        if (concurrent) treeLock.lock();
+        try {
+            return verifyBalanceRecursive(root);
+        } finally {
+            if (concurrent) treeLock.unlock();
+        }
     }
 
     private boolean verifyBalanceRecursive(Node node) {
@@ -514,14 +1247,7 @@ public class DestinationSorter {
 
     // Add method to get total parcels in BST
     public int getTotalParcels() {
-        return getTotalParcelsRecursive(root);
-    }
-
-    private int getTotalParcelsRecursive(Node node) {
-        if (node == null) return 0;
-        return node.parcelQueue.size() + 
-               getTotalParcelsRecursive(node.left) + 
-               getTotalParcelsRecursive(node.right);
+        return totalParcels.get();
     }
 
     /**
@@ -529,32 +1255,22 @@ public class DestinationSorter {
      */
     public void inOrderTraversal() {
         System.out.println("\n=== In-Order Traversal of Cities ===");
-        inOrderTraversalRecursive(root);
-        System.out.println("==================================\n");
-    }
-
-    private void inOrderTraversalRecursive(Node node) {
-        if (node != null) {
-            // Visit left subtree
-            inOrderTraversalRecursive(node.left);
-            
-            // Visit current node
+        for (Node node : citiesInOrder()) {
             System.out.printf("City: %-10s | Parcels: %d\n", 
                 node.cityName, 
-                node.parcelQueue.size());
-            
-            // Visit right subtree
-            inOrderTraversalRecursive(node.right);
+                sizeOf(node));
         }
+        System.out.println("==================================\n");
     }
 
     /**
      * Returns the queue of parcels for a specific city
      * @param city The city to get parcels for
      * @return The queue of parcels for the city, or null if city not found
+     * (the live queue, not guarded by the city stripe: single-threaded use only)
      */
     public ParcelQueue getCityParcels(String city) {
-        Node node = findCityNode(root, city);
+        Node node = findCityNode(city);
         if(node != null)
         {
             return node.parcelQueue;
@@ -0,0 +1,165 @@
+// Fixed-memory latency histogram (log-linear buckets)::
+// values 0..15 have their own bucket, above that every power of two is split into
+// 8 sub-buckets, so a percentile is off by at most 1/8 (12.5%) of the value.
+// 232 buckets cover every non-negative int. Recording is O(1), a percentile is
+// O(buckets), two histograms merge by adding bucket counts (e.g. across runs).
+
+package data_sturcts;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = LINEAR_BUCKETS + (31 - 4) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long sum;
+    private int min = Integer.MAX_VALUE;
+    private int max = 0;
+
+    public void record(int value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketOf(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    public int getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return highest value of the bucket holding that rank (never above the exact max)
+     */
+    public int getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * totalCount);
+        rank = Math.max(1, Math.min(rank, totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    // "p50 3, p95 9, p99 14, max 17 (n=420)"
+    public String summary() {
+        return String.format("p50 %d, p95 %d, p99 %d, max %d (n=%d)",
+            getPercentile(50), getPercentile(95), getPercentile(99), getMax(), getCount());
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(BUCKETS);
+        out.writeLong(totalCount);
+        out.writeLong(sum);
+        out.writeInt(min);
+        out.writeInt(max);
+        for (int i = 0; i < BUCKETS; i++) {
+            out.writeLong(counts[i]);
+        }
+    }
+
+    public static LatencyHistogram readFrom(DataInputStream in) throws IOException {
+        int buckets = in.readInt();
+        if (buckets != BUCKETS) {
+            throw new IOException("Histogram layout mismatch: " + buckets + " buckets");
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.totalCount = in.readLong();
+        histogram.sum = in.readLong();
+        histogram.min = in.readInt();
+        histogram.max = in.readInt();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.counts[i] = in.readLong();
+        }
+        return histogram;
+    }
+
+    // Same layout as writeTo, for snapshots written through a mapped buffer
+    public static int serializedBytes() {
+        return 4 + 8 + 8 + 4 + 4 + 8 * BUCKETS;
+    }
+
+    public void writeTo(ByteBuffer out) {
+        out.putInt(BUCKETS);
+        out.putLong(totalCount);
+        out.putLong(sum);
+        out.putInt(min);
+        out.putInt(max);
+        for (int i = 0; i < BUCKETS; i++) {
+            out.putLong(counts[i]);
+        }
+    }
+
+    public static LatencyHistogram readFrom(ByteBuffer in) throws IOException {
+        int buckets = in.getInt();
+        if (buckets != BUCKETS) {
+            throw new IOException("Histogram layout mismatch: " + buckets + " buckets");
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.totalCount = in.getLong();
+        histogram.sum = in.getLong();
+        histogram.min = in.getInt();
+        histogram.max = in.getInt();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.counts[i] = in.getLong();
+        }
+        return histogram;
+    }
+
+    private static int bucketOf(int value) {
+        if (value < LINEAR_BUCKETS) {
+            return value;
+        }
+        int exponent = 31 - Integer.numberOfLeadingZeros(value); // >= 4
+        int sub = (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    private static int upperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = 4 + (bucket - LINEAR_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+        return (int) Math.min(Integer.MAX_VALUE, lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1);
+    }
+}
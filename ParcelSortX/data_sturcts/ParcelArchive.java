@@ -0,0 +1,234 @@
+// Append-only on-disk archive of parcels evicted from the ParcelTracker (cold tier)::
+// records are only ever appended (batched, one write per flush), the file is never
+// rewritten. An in-memory ID index (parcel key -> file offset, linear probing over
+// primitive arrays) finds a record with one positional read.
+// Reopening an existing archive rebuilds the index with one sequential scan.
+//
+// Record layout (big endian):
+// [int bytes after this field][short idLength][char... id][byte status][byte priority]
+// [byte size][short cityLength][char... city][int arrivalTick][int dispatchTick]
+// [int returnCount][int historyCount][historyCount x ([byte status][int tick]), oldest first]
+
+package data_sturcts;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+public class ParcelArchive {
+    private static final Logger logger = Logger.getLogger(ParcelArchive.class.getName());
+    private static final String[] SIZES = {"Small", "Medium", "Large"};
+    private static final ParcelTracker.ParcelStatus[] STATUSES = ParcelTracker.ParcelStatus.values();
+
+    private final String filePath;
+    private final FileChannel channel;
+    private long writePos;              // end of the flushed records
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 14); // added, not yet written
+    private long[] keys = new long[64]; // ParcelColumns.keyOf, 0 = empty
+    private long[] offsets = new long[64];
+    private int count;
+
+    /**
+     * @param validBytes length of the archive to keep (0 -> start a new archive),
+     *                   anything written after it is cut off
+     */
+    public ParcelArchive(String filePath, long validBytes) throws IOException {
+        this.filePath = filePath;
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < validBytes) {
+            throw new IOException(String.format("Archive %s is shorter than expected (%d < %d bytes)",
+                filePath, channel.size(), validBytes));
+        }
+        channel.truncate(validBytes);
+        if (validBytes > 0) {
+            rebuildIndex(validBytes);
+        }
+        logger.info(String.format("[Initialize] Parcel archive %s opened (%d parcels)", filePath, count));
+    }
+
+    // Buffers one record, it reaches the file on the next flush()
+    public void add(String parcelID, int status, int priority, int sizeIndex, String city,
+                    int arrivalTick, int dispatchTick, int returnCount,
+                    int[] historyStatus, int[] historyTick, int historyCount) {
+        int recordBytes = 2 + 2 * parcelID.length() + 3 + 2 + 2 * city.length() + 16 + 5 * historyCount;
+        if (pending.remaining() < 4 + recordBytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + 4 + recordBytes));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        long offset = writePos + pending.position();
+        pending.putInt(recordBytes);
+        putString(pending, parcelID);
+        pending.put((byte) status);
+        pending.put((byte) priority);
+        pending.put((byte) sizeIndex);
+        putString(pending, city);
+        pending.putInt(arrivalTick);
+        pending.putInt(dispatchTick);
+        pending.putInt(returnCount);
+        pending.putInt(historyCount);
+        for (int i = 0; i < historyCount; i++) {
+            pending.put((byte) historyStatus[i]);
+            pending.putInt(historyTick[i]);
+        }
+        index(ParcelColumns.keyOf(parcelID), offset);
+    }
+
+    // Appends every buffered record with one write
+    public void flush() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            writePos += channel.write(pending, writePos);
+        }
+        pending.clear();
+    }
+
+    public boolean contains(String parcelID) throws IOException {
+        return offsetOf(parcelID) >= 0;
+    }
+
+    // Archived copy of the parcel, null if it was never archived
+    public ParcelTracker.ParcelRecord read(String parcelID) throws IOException {
+        long offset = offsetOf(parcelID);
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer record = readRecord(offset);
+        String id = getString(record);
+        ParcelTracker.ParcelStatus status = STATUSES[record.get()];
+        int priority = record.get();
+        String size = SIZES[record.get()];
+        String city = getString(record);
+        int arrivalTick = record.getInt();
+        int dispatchTick = record.getInt();
+        int returnCount = record.getInt();
+        return new ParcelTracker.ParcelRecord(id, status, arrivalTick, dispatchTick, returnCount, city, priority, size);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // flushed + buffered bytes (the length a snapshot refers to)
+    public long bytes() {
+        return writePos + pending.position();
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void close() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+    }
+
+    // file offset of the parcel's record, -1 if none
+    private long offsetOf(String parcelID) throws IOException {
+        long key = ParcelColumns.keyOf(parcelID);
+        int mask = keys.length - 1;
+        for (int index = mix(key) & mask; keys[index] != 0; index = (index + 1) & mask) {
+            // non P<digits> keys are hashes -> confirm with the ID stored in the record
+            if (keys[index] == key && (key > 0 || getString(readRecord(offsets[index])).equals(parcelID))) {
+                return offsets[index];
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuffer readRecord(long offset) throws IOException {
+        if (offset >= writePos) {
+            flush();
+        }
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        readFully(record, offset + 4);
+        record.flip();
+        return record;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Truncated archive record at " + position);
+            }
+        }
+    }
+
+    private void index(long key, long offset) {
+        if (count + 1 > keys.length / 2) {
+            long[] oldKeys = keys;
+            long[] oldOffsets = offsets;
+            keys = new long[oldKeys.length * 2];
+            offsets = new long[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    insertCell(oldKeys[i], oldOffsets[i]);
+                }
+            }
+        }
+        insertCell(key, offset);
+        count++;
+    }
+
+    private void insertCell(long key, long offset) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        offsets[index] = offset;
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    // Sequential scan of an existing archive, only the IDs are decoded
+    private void rebuildIndex(long validBytes) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(channel.position(0)), 1 << 16));
+        long offset = 0;
+        while (offset < validBytes) {
+            int recordBytes = in.readInt();
+            int idLength = in.readShort();
+            char[] id = new char[idLength];
+            for (int i = 0; i < idLength; i++) {
+                id[i] = in.readChar();
+            }
+            in.skipNBytes(recordBytes - 2 - 2L * idLength);
+            index(ParcelColumns.keyOf(new String(id)), offset);
+            offset += 4 + recordBytes;
+        }
+        writePos = validBytes;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        buffer.putShort((short) value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.putChar(value.charAt(i));
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,254 @@
+// Columnar parcel records (struct of arrays) for the ParcelTracker::
+// every field is its own primitive array and all of them are indexed by the same
+// dense slot number (slot = insertion order). No object per parcel, no String fields:
+// the ID is kept as a numeric key, city as a CityRegistry id, status/priority/size as bytes.
+// Columns are chunked (1024 slots per chunk) so growing never copies existing data.
+// A slot can be released (parcel moved to the archive), once every slot of a full
+// chunk is released the chunk's arrays are dropped. Slots are never reused.
+
+package data_sturcts;
+import java.util.Arrays;
+
+public class ParcelColumns {
+    static final int CHUNK_BITS = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final String[] SIZES = {"Small", "Medium", "Large"};
+    private static final byte RELEASED = -1; // status of a released slot
+
+    private long[][] idKeys;      // see keyOf()
+    private String[][] otherIds;  // only IDs that are not P<digits>, chunk allocated on demand
+    private byte[][] status;      // ParcelStatus ordinal
+    private byte[][] priority;
+    private byte[][] size;        // 0 Small, 1 Medium, 2 Large
+    private int[][] cityId;
+    private int[][] arrivalTick;
+    private int[][] dispatchTick; // -1 -> not dispatched
+    private int[][] returnCount;
+    private int[] releasedInChunk;
+    private int count;
+
+    public ParcelColumns() {
+        int chunks = 4;
+        idKeys = new long[chunks][];
+        otherIds = new String[chunks][];
+        status = new byte[chunks][];
+        priority = new byte[chunks][];
+        size = new byte[chunks][];
+        cityId = new int[chunks][];
+        arrivalTick = new int[chunks][];
+        dispatchTick = new int[chunks][];
+        returnCount = new int[chunks][];
+        releasedInChunk = new int[chunks];
+        count = 0;
+    }
+
+    // Appends a record and returns its slot
+    public int append(long idKey, String parcelID, int statusOrdinal, int priorityValue,
+                      int sizeIndex, int city, int tick) {
+        int slot = count;
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk == idKeys.length) {
+            growDirectory();
+        }
+        if (idKeys[chunk] == null) {
+            idKeys[chunk] = new long[CHUNK_SIZE];
+            status[chunk] = new byte[CHUNK_SIZE];
+            priority[chunk] = new byte[CHUNK_SIZE];
+            size[chunk] = new byte[CHUNK_SIZE];
+            cityId[chunk] = new int[CHUNK_SIZE];
+            arrivalTick[chunk] = new int[CHUNK_SIZE];
+            dispatchTick[chunk] = new int[CHUNK_SIZE];
+            returnCount[chunk] = new int[CHUNK_SIZE];
+        }
+        int i = slot & CHUNK_MASK;
+        idKeys[chunk][i] = idKey;
+        if (idKey < 0) {
+            if (otherIds[chunk] == null) {
+                otherIds[chunk] = new String[CHUNK_SIZE];
+            }
+            otherIds[chunk][i] = parcelID;
+        }
+        status[chunk][i] = (byte) statusOrdinal;
+        priority[chunk][i] = (byte) priorityValue;
+        size[chunk][i] = (byte) sizeIndex;
+        cityId[chunk][i] = city;
+        arrivalTick[chunk][i] = tick;
+        dispatchTick[chunk][i] = -1;
+        returnCount[chunk][i] = 0;
+        count++;
+        return slot;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long getIdKey(int slot) {
+        return idKeys[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    // Rebuilds the ID string (only for reports/exports, lookups use the key)
+    public String getParcelID(int slot) {
+        long key = getIdKey(slot);
+        if (key < 0) {
+            return otherIds[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+        }
+        return idOfKey(key);
+    }
+
+    public int getStatus(int slot) {
+        return status[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    public void setStatus(int slot, int statusOrdinal) {
+        status[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = (byte) statusOrdinal;
+    }
+
+    public int getPriority(int slot) {
+        return priority[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    public int getSizeIndex(int slot) {
+        return size[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    public String getSize(int slot) {
+        return SIZES[getSizeIndex(slot)];
+    }
+
+    public int getCityId(int slot) {
+        return cityId[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    public void setCityId(int slot, int id) {
+        cityId[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = id;
+    }
+
+    public int getArrivalTick(int slot) {
+        return arrivalTick[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    public int getDispatchTick(int slot) {
+        return dispatchTick[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    public void setDispatchTick(int slot, int tick) {
+        dispatchTick[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = tick;
+    }
+
+    public int getReturnCount(int slot) {
+        return returnCount[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    public void setReturnCount(int slot, int returns) {
+        returnCount[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = returns;
+    }
+
+    public int incrementReturnCount(int slot) {
+        return ++returnCount[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    /**
+     * Marks the slot as released (its fields must not be read any more).
+     * @return true when this freed the slot's whole chunk
+     */
+    public boolean release(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        status[chunk][slot & CHUNK_MASK] = RELEASED;
+        if (++releasedInChunk[chunk] < CHUNK_SIZE) {
+            return false;
+        }
+        idKeys[chunk] = null;
+        otherIds[chunk] = null;
+        status[chunk] = null;
+        priority[chunk] = null;
+        size[chunk] = null;
+        cityId[chunk] = null;
+        arrivalTick[chunk] = null;
+        dispatchTick[chunk] = null;
+        returnCount[chunk] = null;
+        return true;
+    }
+
+    public boolean isReleased(int slot) {
+        byte[] chunk = status[slot >>> CHUNK_BITS];
+        return chunk == null || chunk[slot & CHUNK_MASK] == RELEASED;
+    }
+
+    // Raw chunks for scans over whole partitions (ParcelQuery), null once released
+    byte[] statusChunk(int chunk) {
+        return status[chunk];
+    }
+
+    byte[] priorityChunk(int chunk) {
+        return priority[chunk];
+    }
+
+    byte[] sizeChunk(int chunk) {
+        return size[chunk];
+    }
+
+    int[] cityIdChunk(int chunk) {
+        return cityId[chunk];
+    }
+
+    int[] arrivalTickChunk(int chunk) {
+        return arrivalTick[chunk];
+    }
+
+    int[] dispatchTickChunk(int chunk) {
+        return dispatchTick[chunk];
+    }
+
+    int[] returnCountChunk(int chunk) {
+        return returnCount[chunk];
+    }
+
+    // "P0123" -> digit count in the top byte, value below it (leading zeros stay distinct).
+    // Any other ID format gets a hash key with the sign bit set and is compared by string.
+    public static long keyOf(String parcelID) {
+        int length = parcelID.length();
+        int digits = length - 1;
+        if (length >= 2 && length <= 17 && parcelID.charAt(0) == 'P') {
+            long value = 0;
+            int i = 1;
+            for (; i < length; i++) {
+                char c = parcelID.charAt(i);
+                if (c < '0' || c > '9') break;
+                value = value * 10 + (c - '0');
+            }
+            if (i == length) {
+                return ((long) digits << 56) | value;
+            }
+        }
+        return Long.MIN_VALUE | (parcelID.hashCode() & 0xFFFFFFFFL);
+    }
+
+    // inverse of keyOf for numeric keys
+    public static String idOfKey(long key) {
+        int digits = (int) (key >>> 56);
+        char[] chars = new char[digits + 1];
+        chars[0] = 'P';
+        long value = key & ((1L << 56) - 1);
+        for (int i = digits; i >= 1; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+
+    private void growDirectory() {
+        int chunks = idKeys.length * 2;
+        idKeys = Arrays.copyOf(idKeys, chunks);
+        otherIds = Arrays.copyOf(otherIds, chunks);
+        status = Arrays.copyOf(status, chunks);
+        priority = Arrays.copyOf(priority, chunks);
+        size = Arrays.copyOf(size, chunks);
+        cityId = Arrays.copyOf(cityId, chunks);
+        arrivalTick = Arrays.copyOf(arrivalTick, chunks);
+        dispatchTick = Arrays.copyOf(dispatchTick, chunks);
+        returnCount = Arrays.copyOf(returnCount, chunks);
+        releasedInChunk = Arrays.copyOf(releasedInChunk, chunks);
+    }
+}
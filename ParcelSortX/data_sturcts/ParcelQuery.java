@@ -0,0 +1,403 @@
+// Ad-hoc queries over the ParcelTracker records::
+// filters (status / city / priority / size / arrival and dispatch tick ranges) are
+// combined with AND, then one aggregation runs: count, groupBy or topK.
+// Execution is a parallel fork-join scan over the column chunks (1024 slots each):
+// the slot range is split in halves until a partition is small enough, every
+// partition scans its chunks with plain array loops and the partial results are merged.
+// Small trackers are scanned in the calling thread.
+// Only live (in-memory) parcels are scanned, archived ones are not part of a query.
+// The tracker must not be changed while a query runs (run it between ticks).
+//
+// e.g. tracker.query().status(ParcelStatus.SORTED).city("Izmir").size("Large").count()
+//      tracker.query().arrivedBetween(0, 100).groupBy(ParcelQuery.Field.CITY)
+
+package data_sturcts;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ParcelQuery {
+    private static final int PARTITION_CHUNKS = 8;        // leaf partition = 8 chunks = 8192 slots
+    private static final int SEQUENTIAL_CHUNKS = 16;      // up to this many chunks -> no fork-join
+    private static final String[] SIZES = {"Small", "Medium", "Large"};
+    private static final ParcelTracker.ParcelStatus[] STATUSES = ParcelTracker.ParcelStatus.values();
+
+    public enum Field {
+        STATUS,
+        CITY,
+        PRIORITY,
+        SIZE
+    }
+
+    // topK ordering, always highest first
+    public enum Metric {
+        DWELL,          // dispatched: dispatch - arrival, otherwise current tick - arrival
+        RETURN_COUNT,
+        PRIORITY,
+        ARRIVAL_TICK
+    }
+
+    private final ParcelColumns columns;
+    private final CityRegistry cityRegistry;
+    private final int currentTick;
+
+    private int statusMask = (1 << STATUSES.length) - 1;
+    private int priorityMask = 0b1110;                    // bit = priority 1..3
+    private int sizeMask = 0b111;
+    private int cityId = -1;                              // -1 -> any city
+    private boolean noMatch;                              // unknown city -> empty result
+    private int arrivalFrom = Integer.MIN_VALUE;
+    private int arrivalTo = Integer.MAX_VALUE;
+    private int dispatchFrom = Integer.MIN_VALUE;          // a range here also means "dispatched"
+    private int dispatchTo = Integer.MAX_VALUE;
+    private boolean dispatchRange;
+
+    ParcelQuery(ParcelColumns columns, CityRegistry cityRegistry, int currentTick) {
+        this.columns = columns;
+        this.cityRegistry = cityRegistry;
+        this.currentTick = currentTick;
+    }
+
+    // Filters::
+    public ParcelQuery status(ParcelTracker.ParcelStatus... statuses) {
+        int mask = 0;
+        for (ParcelTracker.ParcelStatus status : statuses) {
+            if (status == null) {
+                throw new IllegalArgumentException("Invalid status value");
+            }
+            mask |= 1 << status.ordinal();
+        }
+        statusMask &= mask;
+        return this;
+    }
+
+    public ParcelQuery city(String city) {
+        int id = cityRegistry.idOf(city);
+        if (id < 0 || (cityId >= 0 && cityId != id)) {
+            noMatch = true;
+        }
+        cityId = id;
+        return this;
+    }
+
+    public ParcelQuery priority(int... priorities) {
+        int mask = 0;
+        for (int priority : priorities) {
+            if (priority < 1 || priority > 3) {
+                throw new IllegalArgumentException("Invalid priority value: " + priority);
+            }
+            mask |= 1 << priority;
+        }
+        priorityMask &= mask;
+        return this;
+    }
+
+    public ParcelQuery size(String... sizes) {
+        int mask = 0;
+        for (String size : sizes) {
+            // unknown size -> index -1, 1 << -1 would silently match nothing (bit 31)
+            int index = size == null ? -1 : ArrivalBuffer.sizeIndex(size);
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid size value: " + size);
+            }
+            mask |= 1 << index;
+        }
+        sizeMask &= mask;
+        return this;
+    }
+
+    // inclusive tick ranges
+    public ParcelQuery arrivedBetween(int fromTick, int toTick) {
+        arrivalFrom = Math.max(arrivalFrom, fromTick);
+        arrivalTo = Math.min(arrivalTo, toTick);
+        return this;
+    }
+
+    public ParcelQuery dispatchedBetween(int fromTick, int toTick) {
+        dispatchFrom = Math.max(dispatchFrom, fromTick);
+        dispatchTo = Math.min(dispatchTo, toTick);
+        dispatchRange = true;
+        return this;
+    }
+
+    // Aggregations::
+    public long count() {
+        return run(new Aggregation(Aggregation.COUNT, null, 0, null)).count;
+    }
+
+    /**
+     * Matching parcels per value of the field, groups with no match are left out.
+     */
+    public Groups groupBy(Field field) {
+        int width = switch (field) {
+            case STATUS -> STATUSES.length;
+            case CITY -> cityRegistry.size();
+            case PRIORITY -> 4;
+            case SIZE -> SIZES.length;
+        };
+        long[] counts = run(new Aggregation(Aggregation.GROUP, field, width, null)).groups;
+        int groups = 0;
+        for (long count : counts) {
+            if (count > 0) groups++;
+        }
+        String[] keys = new String[groups];
+        long[] groupCounts = new long[groups];
+        int index = 0;
+        for (int value = 0; value < counts.length; value++) {
+            if (counts[value] == 0) continue;
+            keys[index] = switch (field) {
+                case STATUS -> STATUSES[value].name();
+                case CITY -> cityRegistry.nameOf(value);
+                case PRIORITY -> String.valueOf(value);
+                case SIZE -> SIZES[value];
+            };
+            groupCounts[index++] = counts[value];
+        }
+        return new Groups(keys, groupCounts);
+    }
+
+    /**
+     * IDs of the k matching parcels with the highest metric (ties -> earlier tracked first)
+     */
+    public String[] topK(int k, Metric metric) {
+        if (k <= 0) {
+            return new String[0];
+        }
+        long[] best = run(new Aggregation(Aggregation.TOP, null, k, metric)).top.sortedDescending();
+        String[] ids = new String[best.length];
+        for (int i = 0; i < best.length; i++) {
+            ids[i] = columns.getParcelID(Integer.MAX_VALUE - (int) best[i]);
+        }
+        return ids;
+    }
+
+    // Result of groupBy
+    public static class Groups {
+        private final String[] keys;
+        private final long[] counts;
+
+        Groups(String[] keys, long[] counts) {
+            this.keys = keys;
+            this.counts = counts;
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        public String key(int index) {
+            return keys[index];
+        }
+
+        public long count(int index) {
+            return counts[index];
+        }
+
+        // count of one key, 0 if it had no match
+        public long countOf(String key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return counts[i];
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < keys.length; i++) {
+                sb.append(i == 0 ? "" : ", ").append(keys[i]).append(' ').append(counts[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    private Partial run(Aggregation aggregation) {
+        int chunks = (columns.count() + ParcelColumns.CHUNK_SIZE - 1) >>> ParcelColumns.CHUNK_BITS;
+        if (noMatch || statusMask == 0 || priorityMask == 0 || sizeMask == 0 || chunks == 0) {
+            return new Partial(aggregation);
+        }
+        ScanTask task = new ScanTask(aggregation, 0, chunks);
+        return chunks <= SEQUENTIAL_CHUNKS ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    // What to compute (shared by every partition)
+    private static final class Aggregation {
+        static final int COUNT = 0;
+        static final int GROUP = 1;
+        static final int TOP = 2;
+
+        final int kind;
+        final Field field;
+        final int width;     // GROUP: number of values, TOP: k
+        final Metric metric;
+
+        Aggregation(int kind, Field field, int width, Metric metric) {
+            this.kind = kind;
+            this.field = field;
+            this.width = width;
+            this.metric = metric;
+        }
+    }
+
+    // Result of one partition, merged pairwise on the way up
+    private static final class Partial {
+        long count;
+        long[] groups;
+        TopK top;
+
+        Partial(Aggregation aggregation) {
+            if (aggregation.kind == Aggregation.GROUP) {
+                groups = new long[aggregation.width];
+            } else if (aggregation.kind == Aggregation.TOP) {
+                top = new TopK(aggregation.width);
+            }
+        }
+
+        Partial merge(Partial other) {
+            count += other.count;
+            if (groups != null) {
+                for (int i = 0; i < groups.length; i++) {
+                    groups[i] += other.groups[i];
+                }
+            }
+            if (top != null) {
+                top.addAll(other.top);
+            }
+            return this;
+        }
+    }
+
+    private final class ScanTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+        private final Aggregation aggregation;
+        private final int fromChunk;
+        private final int toChunk;
+
+        ScanTask(Aggregation aggregation, int fromChunk, int toChunk) {
+            this.aggregation = aggregation;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (toChunk - fromChunk > PARTITION_CHUNKS) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                ScanTask left = new ScanTask(aggregation, fromChunk, middle);
+                ScanTask right = new ScanTask(aggregation, middle, toChunk);
+                left.fork();
+                Partial result = right.compute();
+                return result.merge(left.join());
+            }
+            Partial result = new Partial(aggregation);
+            for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+                scanChunk(chunk, result);
+            }
+            return result;
+        }
+
+        private void scanChunk(int chunk, Partial result) {
+            byte[] status = columns.statusChunk(chunk);
+            if (status == null) {
+                return; // every slot of this chunk was archived
+            }
+            byte[] priority = columns.priorityChunk(chunk);
+            byte[] size = columns.sizeChunk(chunk);
+            int[] city = columns.cityIdChunk(chunk);
+            int[] arrival = columns.arrivalTickChunk(chunk);
+            int[] dispatch = columns.dispatchTickChunk(chunk);
+            int[] returns = columns.returnCountChunk(chunk);
+            int base = chunk << ParcelColumns.CHUNK_BITS;
+            int end = Math.min(ParcelColumns.CHUNK_SIZE, columns.count() - base);
+            for (int i = 0; i < end; i++) {
+                int s = status[i];
+                if (s < 0 || (statusMask & (1 << s)) == 0
+                        || (priorityMask & (1 << priority[i])) == 0
+                        || (sizeMask & (1 << size[i])) == 0
+                        || (cityId >= 0 && city[i] != cityId)
+                        || arrival[i] < arrivalFrom || arrival[i] > arrivalTo
+                        || (dispatchRange && (dispatch[i] < 0 || dispatch[i] < dispatchFrom || dispatch[i] > dispatchTo))) {
+                    continue;
+                }
+                switch (aggregation.kind) {
+                    case Aggregation.COUNT -> result.count++;
+                    case Aggregation.GROUP -> result.groups[switch (aggregation.field) {
+                        case STATUS -> s;
+                        case CITY -> city[i];
+                        case PRIORITY -> priority[i];
+                        case SIZE -> size[i];
+                    }]++;
+                    default -> {
+                        int score = switch (aggregation.metric) {
+                            case DWELL -> (dispatch[i] >= 0 ? dispatch[i] : currentTick) - arrival[i];
+                            case RETURN_COUNT -> returns[i];
+                            case PRIORITY -> priority[i];
+                            case ARRIVAL_TICK -> arrival[i];
+                        };
+                        // score in the high half, lower slot wins a tie
+                        result.top.add(((long) score << 32) | (Integer.MAX_VALUE - (base + i)));
+                    }
+                }
+            }
+        }
+    }
+
+    // k largest values, kept in a min-heap (root = smallest of the best k)
+    private static final class TopK {
+        private final long[] heap;
+        private int size;
+
+        TopK(int k) {
+            heap = new long[k];
+        }
+
+        void add(long value) {
+            if (size < heap.length) {
+                int i = size++;
+                heap[i] = value;
+                while (i > 0 && heap[(i - 1) >>> 1] > heap[i]) {
+                    swap(i, (i - 1) >>> 1);
+                    i = (i - 1) >>> 1;
+                }
+            } else if (value > heap[0]) {
+                heap[0] = value;
+                int i = 0;
+                while (true) {
+                    int smallest = i;
+                    int left = 2 * i + 1;
+                    int right = left + 1;
+                    if (left < size && heap[left] < heap[smallest]) smallest = left;
+                    if (right < size && heap[right] < heap[smallest]) smallest = right;
+                    if (smallest == i) break;
+                    swap(i, smallest);
+                    i = smallest;
+                }
+            }
+        }
+
+        void addAll(TopK other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.heap[i]);
+            }
+        }
+
+        long[] sortedDescending() {
+            long[] values = Arrays.copyOf(heap, size);
+            Arrays.sort(values);
+            for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+                long tmp = values[i];
+                values[i] = values[j];
+                values[j] = tmp;
+            }
+            return values;
+        }
+
+        private void swap(int a, int b) {
+            long tmp = heap[a];
+            heap[a] = heap[b];
+            heap[b] = tmp;
+        }
+    }
+}
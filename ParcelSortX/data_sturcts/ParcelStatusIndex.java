@@ -0,0 +1,155 @@
+// Secondary index of the ParcelTracker by (status, city, priority)::
+// every combination is a bucket = an intrusive doubly linked list of record slots
+// (next/prev are primitive columns indexed by slot, no node objects).
+// A parcel is in exactly one bucket, a status change moves it in O(1).
+// Counts per status / city / priority are kept on every move, so they are O(1) too.
+//
+// bucket id = (cityId * STATUSES + status) * PRIORITIES + (priority - 1)
+
+package data_sturcts;
+import java.util.Arrays;
+
+public class ParcelStatusIndex {
+    private static final int STATUSES = 4;   // ParcelTracker.ParcelStatus values
+    private static final int PRIORITIES = 3;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private int[][] next = new int[4][];   // slot -> next slot in the same bucket, -1 = end
+    private int[][] prev = new int[4][];
+    private int[] heads = new int[STATUSES * PRIORITIES * 8];
+    private int[] tails = new int[STATUSES * PRIORITIES * 8];
+    private int[] bucketCounts = new int[STATUSES * PRIORITIES * 8];
+
+    private final int[] statusCounts = new int[STATUSES];
+    private final int[] priorityCounts = new int[PRIORITIES + 1]; // index = priority
+    private int[] cityCounts = new int[8];
+
+    public ParcelStatusIndex() {
+        Arrays.fill(heads, -1);
+        Arrays.fill(tails, -1);
+    }
+
+    public void add(int slot, int status, int cityId, int priority) {
+        ensureSlot(slot);
+        ensureCity(cityId);
+        link(slot, bucketOf(status, cityId, priority));
+        statusCounts[status]++;
+        priorityCounts[priority]++;
+        cityCounts[cityId]++;
+    }
+
+    public void move(int slot, int oldStatus, int newStatus, int cityId, int priority) {
+        if (oldStatus == newStatus) {
+            return;
+        }
+        unlink(slot, bucketOf(oldStatus, cityId, priority));
+        link(slot, bucketOf(newStatus, cityId, priority));
+        statusCounts[oldStatus]--;
+        statusCounts[newStatus]++;
+    }
+
+    // Drops the slot from the index (parcel archived), the counts go down with it
+    public void remove(int slot, int status, int cityId, int priority) {
+        unlink(slot, bucketOf(status, cityId, priority));
+        statusCounts[status]--;
+        priorityCounts[priority]--;
+        cityCounts[cityId]--;
+    }
+
+    // Frees the link arrays of a chunk whose slots were all removed
+    public void releaseChunk(int chunk) {
+        next[chunk] = null;
+        prev[chunk] = null;
+    }
+
+    public int countStatus(int status) {
+        return statusCounts[status];
+    }
+
+    public int countPriority(int priority) {
+        return priorityCounts[priority];
+    }
+
+    public int countCity(int cityId) {
+        return cityId < cityCounts.length ? cityCounts[cityId] : 0;
+    }
+
+    public int countBucket(int status, int cityId, int priority) {
+        int bucket = bucketOf(status, cityId, priority);
+        return bucket < bucketCounts.length ? bucketCounts[bucket] : 0;
+    }
+
+    // First slot of the bucket, then nextInBucket(slot) until -1
+    public int firstInBucket(int status, int cityId, int priority) {
+        int bucket = bucketOf(status, cityId, priority);
+        return bucket < heads.length ? heads[bucket] : -1;
+    }
+
+    public int nextInBucket(int slot) {
+        return next[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    private static int bucketOf(int status, int cityId, int priority) {
+        return (cityId * STATUSES + status) * PRIORITIES + (priority - 1);
+    }
+
+    // appended at the tail -> a bucket lists parcels in the order they reached that status
+    private void link(int slot, int bucket) {
+        int tail = tails[bucket];
+        next[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = -1;
+        prev[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = tail;
+        if (tail < 0) {
+            heads[bucket] = slot;
+        } else {
+            next[tail >>> CHUNK_BITS][tail & CHUNK_MASK] = slot;
+        }
+        tails[bucket] = slot;
+        bucketCounts[bucket]++;
+    }
+
+    private void unlink(int slot, int bucket) {
+        int before = prev[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+        int after = next[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+        if (before < 0) {
+            heads[bucket] = after;
+        } else {
+            next[before >>> CHUNK_BITS][before & CHUNK_MASK] = after;
+        }
+        if (after < 0) {
+            tails[bucket] = before;
+        } else {
+            prev[after >>> CHUNK_BITS][after & CHUNK_MASK] = before;
+        }
+        bucketCounts[bucket]--;
+    }
+
+    private void ensureSlot(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk >= next.length) {
+            int chunks = Math.max(next.length * 2, chunk + 1);
+            next = Arrays.copyOf(next, chunks);
+            prev = Arrays.copyOf(prev, chunks);
+        }
+        if (next[chunk] == null) {
+            next[chunk] = new int[CHUNK_SIZE];
+            prev[chunk] = new int[CHUNK_SIZE];
+        }
+    }
+
+    private void ensureCity(int cityId) {
+        if (cityId < cityCounts.length) {
+            return;
+        }
+        int cities = Math.max(cityCounts.length * 2, cityId + 1);
+        cityCounts = Arrays.copyOf(cityCounts, cities);
+        int buckets = cities * STATUSES * PRIORITIES;
+        int oldBuckets = heads.length;
+        heads = Arrays.copyOf(heads, buckets);
+        tails = Arrays.copyOf(tails, buckets);
+        bucketCounts = Arrays.copyOf(bucketCounts, buckets);
+        Arrays.fill(heads, oldBuckets, buckets, -1);
+        Arrays.fill(tails, oldBuckets, buckets, -1);
+    }
+}
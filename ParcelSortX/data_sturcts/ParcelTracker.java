@@ -1,13 +1,24 @@
 package data_sturcts;
+import java.io.DataOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.logging.*;
 
 public class ParcelTracker {
     private static final Logger logger = Logger.getLogger(ParcelTracker.class.getName());
     private static final int INITIAL_CAPACITY = 30;  // Based on QUEUE_CAPACITY from config.txt::
     private static final double LOAD_FACTOR_THRESHOLD = 0.75; 
+    private static final int MIGRATE_PER_OPERATION = 8; // old buckets/cells moved per operation during a resize
 
     public enum ParcelStatus {
         IN_QUEUE,
@@ -16,67 +27,141 @@ public class ParcelTracker {
         RETURNED
     }
 
-    // Node::
-    private class ParcelNode {
+    // Lookup structure::
+    // CHAINED         -> original String hash + one chain node per parcel
+    // OPEN_ADDRESSING -> numeric part of "P0..." parsed to a long key, linear probing over
+    //                    primitive arrays (no allocation per lookup, one probe per insert)
+    public enum Backend {
+        CHAINED,
+        OPEN_ADDRESSING
+    }
+
+    // Chain entry of the CHAINED backend, the record itself lives in the columns
+    private static class ParcelNode {
         String parcelID;
-        ParcelStatus status;
-        int arrivalTick;
-        int dispatchTick;
-        int returnCount;
-        String destinationCity;
-        int priority;  // Added
-        String size;   // Added
+        int slot;
         ParcelNode next;  // For chaining
-        
-        // Status history tracking
-        private class StatusChange {
-            ParcelStatus status;
-            int tick;
-            StatusChange next;
-            
-            StatusChange(ParcelStatus status, int tick) {
-                this.status = status;
-                this.tick = tick;
-                this.next = null;
-            }
+
+        ParcelNode(String parcelID, int slot) {
+            this.parcelID = parcelID;
+            this.slot = slot;
+            this.next = null;
         }
-        private StatusChange statusHistory;  // Track status changes
-        
-        ParcelNode(String parcelID, ParcelStatus status, int arrivalTick, 
-                  String destinationCity, int priority, String size) {
+    }
+
+    // Read-only copy of one tracked parcel, returned by get()
+    public static class ParcelRecord {
+        private final String parcelID;
+        private final ParcelStatus status;
+        private final int arrivalTick;
+        private final int dispatchTick;
+        private final int returnCount;
+        private final String destinationCity;
+        private final int priority;
+        private final String size;
+
+        ParcelRecord(String parcelID, ParcelStatus status, int arrivalTick, int dispatchTick,
+                     int returnCount, String destinationCity, int priority, String size) {
             this.parcelID = parcelID;
             this.status = status;
             this.arrivalTick = arrivalTick;
-            this.dispatchTick = -1;  // Not dispatched yet
-            this.returnCount = 0;
+            this.dispatchTick = dispatchTick;
+            this.returnCount = returnCount;
             this.destinationCity = destinationCity;
-            this.priority = priority;  // Store priority
-            this.size = size;         // Store size
-            this.next = null;
-            this.statusHistory = new StatusChange(status, arrivalTick);  // Initialize history
+            this.priority = priority;
+            this.size = size;
         }
+
+        public String getParcelID() { return parcelID; }
+        public ParcelStatus getStatus() { return status; }
+        public int getArrivalTick() { return arrivalTick; }
+        public int getDispatchTick() { return dispatchTick; } // -1 -> not dispatched
+        public int getReturnCount() { return returnCount; }
+        public String getDestinationCity() { return destinationCity; }
+        public int getPriority() { return priority; }
+        public String getSize() { return size; }
     }
     
     // Hash table structure
-    private ParcelNode[] table;
+    private final Backend backend;
+    private ParcelNode[] table;   // CHAINED buckets
+    private long[] keys;          // OPEN_ADDRESSING probe table, 0 = empty
+    private int[] slotOf;         // probe index -> slot in columns
     private int size;
     private int capacity;
+    // Incremental resize::
+    // the previous table stays next to the new one until every old bucket/cell was moved,
+    // each operation moves MIGRATE_PER_OPERATION of them and lookups check both tables.
+    // No tick ever pays for a full rehash.
+    private ParcelNode[] oldTable;
+    private long[] oldKeys;       // read-only while migrating (inserts go to the new table)
+    private int[] oldSlotOf;
+    private int migrateIndex;     // next old bucket/cell to move
+    private static final long TOMBSTONE = 1; // removed probe cell (real keys are never this small)
+    private int tombstones;       // TOMBSTONE cells in the current probe table
+    // Parcel records (both backends): one primitive column per field, indexed by slot
+    // (slot = insertion order). The lookup tables above only map parcel ID -> slot.
+    private final ParcelColumns columns = new ParcelColumns();
+    private final CityRegistry cityRegistry = new CityRegistry();
+    private final StatusHistoryLog history = new StatusHistoryLog(); // every status change, no object per event
+    // Secondary index (status, city, priority) -> slots, kept in insert/updateStatus
+    private final ParcelStatusIndex statusIndex = new ParcelStatusIndex();
+    // Parcels not DISPATCHED yet, bucketed by arrival tick (range / oldest-N queries)
+    private final ArrivalTimeIndex timeIndex = new ArrivalTimeIndex();
+    private static final ParcelStatus[] STATUSES = ParcelStatus.values();
     
     private int currentTick = 0;  // Add current tick tracking
     private int totalGenerated = 0;  // Track total parcels generated
     private int totalEnqueued = 0;   // Track successfully enqueued parcels
     private int totalDispatched = 0; // Track total dispatched parcels
     private int totalReturned = 0;   // Track total returned parcels
-    private int[] cityDispatches = new int[5]; // Track dispatches per city
+    private int[] cityDispatches = new int[8]; // dispatches per city, index = city id (grows with the registry)
+    // Queue wait (arrival -> first SORTED) per priority, index = priority (1..3)
+    private long[] sortWaitTotal = new long[4];
+    private int[] sortWaitCount = new int[4];
+    private int[] sortWaitMax = new int[4];
+    // Dwell time (arrival -> dispatch), recorded at the moment of dispatch
+    private final LatencyHistogram dwellAll = new LatencyHistogram();
+    private final LatencyHistogram[] dwellByPriority = {null, new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+    private LatencyHistogram[] dwellByCity = new LatencyHistogram[8]; // index = city id
+    private String maxDelayParcel = "N/A";
+    private int returnedMoreThanOnce = 0;
+    // Cold tier (off unless enableTiering is called)::
+    // parcels DISPATCHED for more than archiveIdleTicks leave the table, columns, index and
+    // history for an append-only ParcelArchive on disk. get() still finds them there, the
+    // counters above are untouched and archivedCounts keeps countStatus/countParcels whole.
+    private ParcelArchive archive;
+    private int archiveIdleTicks;
+    private int archivedTotal;
+    private int[] archivedCounts = new int[8 * 3]; // cityId * 3 + (priority - 1) -> archived parcels
+    // Write-ahead log (off unless enableWal is called), every change is appended after it is applied
+    private WriteAheadLog wal;
+    private long snapshotWalRunId;     // log run/position a loaded snapshot covers, see recover()
+    private long snapshotWalPosition;
 
     public ParcelTracker() {
-        this.capacity = INITIAL_CAPACITY;
-        this.table = new ParcelNode[capacity];
+        this(Backend.CHAINED);
+    }
+
+    public ParcelTracker(Backend backend) {
+        this.backend = backend;
+        if (backend == Backend.OPEN_ADDRESSING) {
+            this.capacity = 32; // power of two for the probe mask
+            this.keys = new long[capacity];
+            this.slotOf = new int[capacity];
+        } else {
+            this.capacity = INITIAL_CAPACITY;
+            this.table = new ParcelNode[capacity];
+        }
         this.size = 0;
-        logger.info(String.format("[Initialize] ParcelTracker created with initial capacity %d (based on QUEUE_CAPACITY)", capacity));
+        logger.info(String.format("[Initialize] ParcelTracker (%s) created with initial capacity %d (based on QUEUE_CAPACITY)", backend, capacity));
+    }
+
+    public Backend getBackend() {
+        return backend;
     }
 
-    private int hash(String parcelID) {
+    private int hash(String parcelID, int capacity) {
         int hash = 0;
         for (char c : parcelID.toCharArray()) {
             hash = (hash * 31 + c) % capacity;
@@ -100,20 +185,47 @@ public class ParcelTracker {
             if (size == null || !size.matches("Small|Medium|Large")) {
                 throw new IllegalArgumentException("Invalid size value");
             }
-         
-            if (exists(parcelID)) {
-                throw new IllegalStateException("Parcel already exists: " + parcelID);
+            if (arrivalTick < 0) {
+                throw new IllegalArgumentException("Invalid arrival tick");
             }
 
-            if ((double) this.size / capacity >= LOAD_FACTOR_THRESHOLD) {
-                resize();
+            int slot = columns.count();
+            long key = ParcelColumns.keyOf(parcelID);
+            if (backend == Backend.OPEN_ADDRESSING) {
+                migrateStep();
+                if ((double) (this.size + tombstones + 1) / capacity > LOAD_FACTOR_THRESHOLD) {
+                    resizeProbeTable();
+                }
+                int index = probe(keys, slotOf, key, parcelID); // finds the duplicate or the free cell
+                if (keys[index] != 0
+                        || (oldKeys != null && oldKeys[probe(oldKeys, oldSlotOf, key, parcelID)] != 0)
+                        || isArchived(parcelID)) {
+                    throw new IllegalStateException("Parcel already exists: " + parcelID);
+                }
+                keys[index] = key;
+                slotOf[index] = slot;
+            } else {
+                if (exists(parcelID)) {
+                    throw new IllegalStateException("Parcel already exists: " + parcelID);
+                }
+
+                if ((double) this.size / capacity >= LOAD_FACTOR_THRESHOLD) {
+                    resize();
+                }
+
+                int index = hash(parcelID, capacity);
+                ParcelNode newNode = new ParcelNode(parcelID, slot);
+                newNode.next = table[index];
+                table[index] = newNode;
             }
-            
-            int index = hash(parcelID);
-            ParcelNode newNode = new ParcelNode(parcelID, status, arrivalTick, 
-                                               destinationCity, priority, size);
-            newNode.next = table[index];
-            table[index] = newNode;
+            int cityId = internCity(destinationCity);
+            columns.append(key, parcelID, status.ordinal(), priority, ArrivalBuffer.sizeIndex(size),
+                cityId, arrivalTick);
+            statusIndex.add(slot, status.ordinal(), cityId, priority);
+            if (status != ParcelStatus.DISPATCHED) {
+                timeIndex.add(slot, arrivalTick);
+            }
+            history.append(slot, status.ordinal(), arrivalTick);  // Initialize history
             this.size++;
             totalGenerated++;  // Increment total generated
             
@@ -121,6 +233,10 @@ public class ParcelTracker {
                 totalEnqueued++;  // Only count as enqueued if in queue or sorted
             }
             
+            if (wal != null) {
+                wal.logInsert(currentTick, parcelID, arrivalTick, status.ordinal(), priority,
+                    ArrivalBuffer.sizeIndex(size), destinationCity);
+            }
             logger.info(String.format("[Insert] Parcel %s tracked with status %s", 
                 parcelID, status));
         } catch (Exception e) {
@@ -132,34 +248,26 @@ public class ParcelTracker {
 
     public void updateStatus(String parcelID, ParcelStatus newStatus) {
         try {
-            ParcelNode node = getNode(parcelID);
-            if (node == null) {
-                throw new IllegalArgumentException("Parcel not found: " + parcelID);
-            }
-            
-            ParcelStatus oldStatus = node.status;
+            int slot = liveSlot(parcelID);
+            ParcelStatus oldStatus = STATUSES[columns.getStatus(slot)];
             
             // Update status history
-            ParcelNode.StatusChange newChange = node.new StatusChange(newStatus, currentTick);
-            newChange.next = node.statusHistory;
-            node.statusHistory = newChange;
+            history.append(slot, newStatus.ordinal(), currentTick);
             
             if (oldStatus == ParcelStatus.DISPATCHED && newStatus != ParcelStatus.DISPATCHED) {
                 totalDispatched--;
-                for (int i = 0; i < 5; i++) {
-                    if (node.destinationCity.equals(getCityName(i))) {
-                        cityDispatches[i]--;
-                        break;
-                    }
-                }
+                cityDispatches[columns.getCityId(slot)]--;
             } else if (oldStatus != ParcelStatus.DISPATCHED && newStatus == ParcelStatus.DISPATCHED) {
                 totalDispatched++;
-                for (int i = 0; i < 5; i++) {
-                    if (node.destinationCity.equals(getCityName(i))) {
-                        cityDispatches[i]++;
-                        break;
-                    }
-                }
+                cityDispatches[columns.getCityId(slot)]++;
+                recordDwell(slot, currentTick - columns.getArrivalTick(slot));
+            }
+            if (oldStatus == ParcelStatus.IN_QUEUE && newStatus == ParcelStatus.SORTED) {
+                int wait = currentTick - columns.getArrivalTick(slot);
+                int priority = columns.getPriority(slot);
+                sortWaitTotal[priority] += wait;
+                sortWaitCount[priority]++;
+                sortWaitMax[priority] = Math.max(sortWaitMax[priority], wait);
             }
             if (oldStatus == ParcelStatus.RETURNED && newStatus != ParcelStatus.RETURNED) {
                 totalReturned--;
@@ -167,9 +275,15 @@ public class ParcelTracker {
                 totalReturned++;
             }
             
-            node.status = newStatus;
+            moveInTimeIndex(slot, oldStatus.ordinal(), newStatus.ordinal());
+            statusIndex.move(slot, oldStatus.ordinal(), newStatus.ordinal(),
+                columns.getCityId(slot), columns.getPriority(slot));
+            columns.setStatus(slot, newStatus.ordinal());
             if (newStatus == ParcelStatus.DISPATCHED) {
-                node.dispatchTick = currentTick;
+                columns.setDispatchTick(slot, currentTick);
+            }
+            if (wal != null) {
+                wal.logStatus(currentTick, parcelID, newStatus.ordinal());
             }
             logger.info(String.format("[Status Update] Parcel %s: %s -> %s", 
                 parcelID, oldStatus, newStatus));
@@ -181,13 +295,17 @@ public class ParcelTracker {
         }
     }
  
-    public ParcelNode get(String parcelID) {
+    public ParcelRecord get(String parcelID) {
         try {
-            ParcelNode node = getNode(parcelID);
-            if (node == null) {
+            int slot = findSlot(parcelID);
+            if (slot >= 0) {
+                return recordOf(slot);
+            }
+            ParcelRecord archived = archive == null ? null : readArchived(parcelID); // slow path, one disk read
+            if (archived == null) {
                 throw new IllegalArgumentException("Parcel not found: " + parcelID);
             }
-            return node;
+            return archived;
         } catch (Exception e) {
             logger.severe(String.format("[Error] Failed to get parcel %s: %s", 
                 parcelID, e.getMessage()));
@@ -197,6 +315,9 @@ public class ParcelTracker {
 
      public void incrementTotalReturnedParcels() {
         this.totalReturned++;
+        if (wal != null) {
+            wal.logReturnTotal(currentTick);
+        }
     }
 
     // Rapor için bu değeri döndürecek bir getter metodu
@@ -207,14 +328,16 @@ public class ParcelTracker {
 
     public void incrementReturnCount(String parcelID) {
         try {
-            ParcelNode node = getNode(parcelID);
-            if (node == null) {
-                throw new IllegalArgumentException("Parcel not found: " + parcelID);
+            int slot = liveSlot(parcelID);
+            int returnCount = columns.incrementReturnCount(slot);
+            if (returnCount == 2) {
+                returnedMoreThanOnce++;
+            }
+            if (wal != null) {
+                wal.logReturn(currentTick, parcelID);
             }
-            
-            node.returnCount++;
             logger.info(String.format("[Return] Parcel %s return count: %d", 
-                parcelID, node.returnCount));
+                parcelID, returnCount));
                 
         } catch (Exception e) {
             logger.severe(String.format("[Error] Failed to increment return count for parcel %s: %s", 
@@ -222,65 +345,284 @@ public class ParcelTracker {
             throw e;
         }
     }
+    /**
+     * Re-route: the parcel counts for the new city from now on (status index bucket,
+     * dispatch counter if it is already dispatched). Call it together with
+     * DestinationSorter.relocateParcel.
+     */
+    public void updateDestination(String parcelID, String newCity) {
+        try {
+            if (newCity == null || newCity.trim().isEmpty()) {
+                throw new IllegalArgumentException("Invalid destination city");
+            }
+            int slot = liveSlot(parcelID);
+            int oldCityId = columns.getCityId(slot);
+            int newCityId = internCity(newCity);
+            if (oldCityId == newCityId) {
+                return;
+            }
+            int status = columns.getStatus(slot);
+            int priority = columns.getPriority(slot);
+            statusIndex.remove(slot, status, oldCityId, priority);
+            statusIndex.add(slot, status, newCityId, priority);
+            if (status == ParcelStatus.DISPATCHED.ordinal()) {
+                cityDispatches[oldCityId]--;
+                cityDispatches[newCityId]++;
+            }
+            columns.setCityId(slot, newCityId);
+            if (wal != null) {
+                wal.logDestination(currentTick, parcelID, newCity);
+            }
+            logger.info(String.format("[Re-route] Parcel %s: %s -> %s",
+                parcelID, cityRegistry.nameOf(oldCityId), newCity));
+
+        } catch (Exception e) {
+            logger.severe(String.format("[Error] Failed to re-route parcel %s: %s",
+                parcelID, e.getMessage()));
+            throw e;
+        }
+    }
+
      public int countStatus(ParcelStatus status) {
+        int archived = status == ParcelStatus.DISPATCHED ? archivedTotal : 0;
+        return statusIndex.countStatus(status.ordinal()) + archived;
+    }
+
+    /**
+     * Number of tracked parcels matching the filter, from the secondary index (no scan).
+     * @param status   null -> any status
+     * @param city     null -> any city
+     * @param priority 0 -> any priority
+     */
+    public int countParcels(ParcelStatus status, String city, int priority) {
+        int cityId = -1;
+        if (city != null) {
+            cityId = cityRegistry.idOf(city);
+            if (cityId < 0) {
+                return 0;
+            }
+        }
+        return countLive(status, cityId, priority) + countArchived(status, cityId, priority);
+    }
+
+    // cityId -1 -> any city
+    private int countLive(ParcelStatus status, int cityId, int priority) {
+        if (cityId < 0 && priority == 0) {
+            return status == null ? size : statusIndex.countStatus(status.ordinal());
+        }
+        if (status == null && priority == 0) {
+            return statusIndex.countCity(cityId);
+        }
+        if (status == null && cityId < 0) {
+            return statusIndex.countPriority(priority);
+        }
         int count = 0;
-        for (ParcelNode node : table) {
-            while (node != null) {
-                if (node.status == status) count++;
-                node = node.next;
+        int cityEnd = cityId < 0 ? cityRegistry.size() : cityId + 1;
+        for (int c = Math.max(cityId, 0); c < cityEnd; c++) {
+            for (int s = 0; s < STATUSES.length; s++) {
+                if (status != null && s != status.ordinal()) continue;
+                for (int p = 1; p <= 3; p++) {
+                    if (priority != 0 && p != priority) continue;
+                    count += statusIndex.countBucket(s, c, p);
+                }
             }
         }
         return count;
     }
 
-    public double getLoadFactor() {
-        return (double) size / capacity;
+    private int countArchived(ParcelStatus status, int cityId, int priority) {
+        if (archivedTotal == 0 || (status != null && status != ParcelStatus.DISPATCHED)) {
+            return 0;
+        }
+        if (cityId < 0 && priority == 0) {
+            return archivedTotal;
+        }
+        int count = 0;
+        int cityEnd = cityId < 0 ? cityRegistry.size() : cityId + 1;
+        for (int c = Math.max(cityId, 0); c < cityEnd && c * 3 < archivedCounts.length; c++) {
+            for (int p = 1; p <= 3; p++) {
+                if (priority != 0 && p != priority) continue;
+                count += archivedCounts[c * 3 + p - 1];
+            }
+        }
+        return count;
     }
 
-    public String getTimingStats() {
-        int totalDelay = 0;
-        int maxDelay = 0;
-        String maxDelayParcel = "N/A";
-        int processed = 0;
-        int returnedMoreThanOnce = 0;
-
-        for (ParcelNode node : table) {
-            while (node != null) {
-                if (node.status == ParcelStatus.DISPATCHED && node.dispatchTick >= 0) {
-                    int delay = node.dispatchTick - node.arrivalTick;
-                    if (delay >= 0 && delay <= currentTick) {
-                        totalDelay += delay;
-                        processed++;
-                        if (delay > maxDelay) {
-                            maxDelay = delay;
-                            maxDelayParcel = node.parcelID;
-                        }
+    /**
+     * IDs of the tracked parcels matching the filter (same wildcards as countParcels),
+     * e.g. findParcels(SORTED, "Izmir", 3). Only the matching index buckets are visited.
+     * Archived parcels are not listed (they are only reachable by ID through get()).
+     */
+    public String[] findParcels(ParcelStatus status, String city, int priority) {
+        int cityId = -1;
+        if (city != null) {
+            cityId = cityRegistry.idOf(city);
+            if (cityId < 0) {
+                return new String[0];
+            }
+        }
+        String[] result = new String[countLive(status, cityId, priority)];
+        int index = 0;
+        int cityEnd = cityId < 0 ? cityRegistry.size() : cityId + 1;
+        for (int c = Math.max(cityId, 0); c < cityEnd; c++) {
+            for (int s = 0; s < STATUSES.length; s++) {
+                if (status != null && s != status.ordinal()) continue;
+                for (int p = 1; p <= 3; p++) {
+                    if (priority != 0 && p != priority) continue;
+                    for (int slot = statusIndex.firstInBucket(s, c, p); slot >= 0; slot = statusIndex.nextInBucket(slot)) {
+                        result[index++] = columns.getParcelID(slot);
                     }
                 }
-                if (node.returnCount > 1) {
-                    returnedMoreThanOnce++;
-                }
-                node = node.next;
             }
         }
+        return result;
+    }
+
+    /**
+     * Parcels not dispatched yet that arrived between fromTick and toTick (inclusive),
+     * oldest first, e.g. for backlog-age alerts. Served by the arrival-time index,
+     * the cost follows the size of the result, not the number of tracked parcels.
+     */
+    public String[] findUndispatchedArrivedBetween(int fromTick, int toTick) {
+        return idsOf(timeIndex.collect(fromTick, toTick, Integer.MAX_VALUE));
+    }
+
+    // The n parcels not dispatched yet that have been waiting longest (oldest arrival first)
+    public String[] findOldestUndispatched(int n) {
+        return idsOf(timeIndex.collect(0, Integer.MAX_VALUE, n));
+    }
+
+    /**
+     * Ad-hoc query over the live parcels: any mix of filters, then count / groupBy / topK,
+     * e.g. query().status(SORTED).size("Large").groupBy(ParcelQuery.Field.CITY).
+     * Scans the record columns in parallel, do not change the tracker while it runs.
+     */
+    public ParcelQuery query() {
+        return new ParcelQuery(columns, cityRegistry, currentTick);
+    }
+
+    private String[] idsOf(int[] slots) {
+        String[] ids = new String[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            ids[i] = columns.getParcelID(slots[i]);
+        }
+        return ids;
+    }
+
+    // the arrival-time index holds exactly the parcels that are not DISPATCHED
+    private void moveInTimeIndex(int slot, int oldStatus, int newStatus) {
+        int dispatched = ParcelStatus.DISPATCHED.ordinal();
+        if (oldStatus != dispatched && newStatus == dispatched) {
+            timeIndex.remove(slot, columns.getArrivalTick(slot));
+        } else if (oldStatus == dispatched && newStatus != dispatched) {
+            timeIndex.add(slot, columns.getArrivalTick(slot));
+        }
+    }
+
+    public double getLoadFactor() {
+        return (double) size / capacity;
+    }
 
-        double avgDelay = (processed > 0) ? (double) totalDelay / processed : 0;
+    private void recordDwell(int slot, int delay) {
+        if (delay < 0) {
+            return;
+        }
+        if (delay > dwellAll.getMax() || dwellAll.getCount() == 0) {
+            maxDelayParcel = columns.getParcelID(slot);
+        }
+        dwellAll.record(delay);
+        dwellByPriority[columns.getPriority(slot)].record(delay);
+        int cityId = columns.getCityId(slot);
+        if (cityId >= dwellByCity.length) {
+            LatencyHistogram[] grown = new LatencyHistogram[Math.max(dwellByCity.length * 2, cityId + 1)];
+            System.arraycopy(dwellByCity, 0, grown, 0, dwellByCity.length);
+            dwellByCity = grown;
+        }
+        if (dwellByCity[cityId] == null) {
+            dwellByCity[cityId] = new LatencyHistogram();
+        }
+        dwellByCity[cityId].record(delay);
+    }
+
+    // Dwell time histograms (arrival -> dispatch), live at any tick
+    public LatencyHistogram getDwellHistogram() {
+        return dwellAll;
+    }
+
+    public LatencyHistogram getDwellHistogram(int priority) {
+        return dwellByPriority[priority];
+    }
+
+    public LatencyHistogram getDwellHistogram(String city) {
+        int cityId = cityRegistry.idOf(city);
+        if (cityId < 0 || cityId >= dwellByCity.length || dwellByCity[cityId] == null) {
+            return new LatencyHistogram();
+        }
+        return dwellByCity[cityId];
+    }
+
+    // No table scan: everything below comes from the running histograms/counters
+    public String getTimingStats() {
         StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Average Parcel Processing Time: %.2f ticks\n", avgDelay));
+        sb.append(String.format("Average Parcel Processing Time: %.2f ticks\n", dwellAll.getMean()));
         sb.append(String.format("Parcel With Longest Delay: %s (%d ticks)\n", 
-            maxDelayParcel.equals("N/A") ? "N/A" : maxDelayParcel, maxDelay));
-        sb.append(String.format("Parcels Returned More Than Once: %d\n\n", returnedMoreThanOnce));
+            maxDelayParcel, dwellAll.getMax()));
+        int[] oldest = timeIndex.collect(0, Integer.MAX_VALUE, 1);
+        if (oldest.length > 0) {
+            sb.append(String.format("Oldest Undispatched Parcel: %s (waiting %d ticks)\n",
+                columns.getParcelID(oldest[0]), currentTick - columns.getArrivalTick(oldest[0])));
+        }
+        sb.append(String.format("Parcels Returned More Than Once: %d\n", returnedMoreThanOnce));
+        sb.append("Dwell Time (arrival -> dispatch) Percentiles:\n");
+        sb.append(String.format("  %-10s: %s\n", "All", dwellAll.summary()));
+        String[] priorityNames = {"", "Low", "Medium", "High"};
+        for (int priority = 3; priority >= 1; priority--) {
+            sb.append(String.format("  %-10s: %s\n", priorityNames[priority], dwellByPriority[priority].summary()));
+        }
+        for (int cityId = 0; cityId < dwellByCity.length; cityId++) {
+            if (dwellByCity[cityId] != null) {
+                sb.append(String.format("  %-10s: %s\n", cityRegistry.nameOf(cityId), dwellByCity[cityId].summary()));
+            }
+        }
+        sb.append("Queue Wait (arrival -> sorted) by Priority:\n");
+        for (int priority = 3; priority >= 1; priority--) {
+            double avgWait = (sortWaitCount[priority] > 0) ? (double) sortWaitTotal[priority] / sortWaitCount[priority] : 0;
+            sb.append(String.format("  %-6s: avg %.2f ticks, max %d ticks\n",
+                priorityNames[priority], avgWait, sortWaitMax[priority]));
+        }
+        sb.append("\n");
         return sb.toString();
     }
     //check if parcel exists avoid duplicate entries::
     public boolean exists(String parcelID) {
-        return getNode(parcelID) != null;
+        return findSlot(parcelID) >= 0 || isArchived(parcelID);
     }
     
-    private ParcelNode getNode(String parcelID) {
-        int index = hash(parcelID);
-        ParcelNode current = table[index];
-        
+    // slot of the parcel in the columns, -1 if it is not tracked
+    private int findSlot(String parcelID) {
+        migrateStep();
+        if (backend == Backend.OPEN_ADDRESSING) {
+            long key = ParcelColumns.keyOf(parcelID);
+            int index = probe(keys, slotOf, key, parcelID);
+            if (keys[index] != 0) {
+                return slotOf[index];
+            }
+            if (oldKeys != null) {
+                index = probe(oldKeys, oldSlotOf, key, parcelID);
+                if (oldKeys[index] != 0) {
+                    return oldSlotOf[index];
+                }
+            }
+            return -1;
+        }
+        ParcelNode found = findInChain(table[hash(parcelID, table.length)], parcelID);
+        if (found == null && oldTable != null) {
+            found = findInChain(oldTable[hash(parcelID, oldTable.length)], parcelID);
+        }
+        return found == null ? -1 : found.slot;
+    }
+
+    private ParcelNode findInChain(ParcelNode current, String parcelID) {
         while (current != null) {
             if (current.parcelID.equals(parcelID)) {
                 return current;
@@ -290,29 +632,353 @@ public class ParcelTracker {
         return null;
     }
 
+    private ParcelRecord recordOf(int slot) {
+        return new ParcelRecord(columns.getParcelID(slot), STATUSES[columns.getStatus(slot)],
+            columns.getArrivalTick(slot), columns.getDispatchTick(slot), columns.getReturnCount(slot),
+            cityRegistry.nameOf(columns.getCityId(slot)), columns.getPriority(slot), columns.getSize(slot));
+    }
+
+    // Starts a resize, the entries are moved later by migrateStep()
     private void resize() {
-        int oldCapacity = capacity;
+        finishMigration(); // a new resize never starts before the previous one is done
+        oldTable = table;
+        migrateIndex = 0;
         capacity *= 2;
-        ParcelNode[] oldTable = table;
         table = new ParcelNode[capacity];
-        size = 0;
-        for (int i = 0; i < oldCapacity; i++) {
-            ParcelNode current = oldTable[i];
-            while (current != null) {
-                ParcelNode next = current.next;
-                int newIndex = hash(current.parcelID);
-                current.next = table[newIndex];
-                table[newIndex] = current;
-                size++;
-                current = next;
+        logger.info(String.format("[Resize] Hash table resizing to capacity %d (incremental)", capacity));
+    }
+
+    // Moves a bounded number of old buckets/cells into the new table
+    private void migrateStep() {
+        if (oldTable != null) {
+            int end = Math.min(migrateIndex + MIGRATE_PER_OPERATION, oldTable.length);
+            for (; migrateIndex < end; migrateIndex++) {
+                ParcelNode current = oldTable[migrateIndex];
+                oldTable[migrateIndex] = null;
+                while (current != null) {
+                    ParcelNode next = current.next;
+                    int newIndex = hash(current.parcelID, capacity);
+                    current.next = table[newIndex];
+                    table[newIndex] = current;
+                    current = next;
+                }
+            }
+            if (migrateIndex == oldTable.length) {
+                oldTable = null;
+            }
+        } else if (oldKeys != null) {
+            int end = Math.min(migrateIndex + MIGRATE_PER_OPERATION, oldKeys.length);
+            int mask = capacity - 1;
+            for (; migrateIndex < end; migrateIndex++) {
+                long key = oldKeys[migrateIndex];
+                if (key == 0 || key == TOMBSTONE) {
+                    continue;
+                }
+                int index = mix(key) & mask;
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                slotOf[index] = oldSlotOf[migrateIndex];
+            }
+            if (migrateIndex == oldKeys.length) {
+                oldKeys = null;
+                oldSlotOf = null;
             }
         }
-        
-        logger.info(String.format("[Resize] Hash table resized to capacity %d", capacity));
+    }
+
+    private void finishMigration() {
+        while (oldTable != null || oldKeys != null) {
+            migrateStep();
+        }
+    }
+
+    public boolean isResizing() {
+        return oldTable != null || oldKeys != null;
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L; // Fibonacci hashing, sequential IDs spread over the table
+        return (int) (key ^ (key >>> 32));
+    }
+
+    // index holding the key, or the empty cell where it would go
+    private int probe(long[] keys, int[] slotOf, long key, String parcelID) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != 0) {
+            if (keys[index] == key
+                    && (key > 0 || columns.getParcelID(slotOf[index]).equals(parcelID))) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    // Starts a resize, the cells are moved later by migrateStep().
+    // The old cells are never cleared, so their probe chains stay valid until the switch.
+    private void resizeProbeTable() {
+        finishMigration();
+        oldKeys = keys;
+        oldSlotOf = slotOf;
+        migrateIndex = 0;
+        if ((double) (size + 1) * 2 / capacity > LOAD_FACTOR_THRESHOLD) {
+            capacity *= 2;
+        } // else mostly tombstones (archived parcels) -> rehash at the same capacity
+        tombstones = 0;
+        keys = new long[capacity];
+        slotOf = new int[capacity];
+        logger.info(String.format("[Resize] Probe table resizing to capacity %d (incremental)", capacity));
+    }
+
+    /**
+     * Streams the status changes recorded since the previous call
+     * (16 bytes per change: slot, status ordinal, tick, previous entry).
+     * With tiering the first call has to come before the first parcel is archived.
+     * @return number of changes written
+     * @throws IllegalStateException if archived history was freed before streaming started
+     */
+    public int streamHistory(DataOutputStream out) throws IOException {
+        return history.writeNewEntries(out);
+    }
+
+    public int getHistorySize() {
+        return history.size();
     }
 
     public void setCurrentTick(int tick) {
         this.currentTick = tick;
+        if (archive != null) {
+            archiveIdle();
+        }
+    }
+
+    /**
+     * Turns on the cold tier: from now on parcels that have been DISPATCHED for more than
+     * idleTicks are moved to an append-only archive file when the tick advances.
+     */
+    public void enableTiering(String archiveFile, int idleTicks) throws IOException {
+        if (archive != null) {
+            archive.close();
+        }
+        this.archive = new ParcelArchive(archiveFile, 0);
+        this.archiveIdleTicks = idleTicks;
+        logger.info(String.format("[Initialize] Tiering on: dispatched parcels idle for %d ticks go to %s",
+            idleTicks, archiveFile));
+    }
+
+    /**
+     * Starts logging every change to a new write-ahead log (group commit every fsyncBatch changes).
+     * Snapshots written from now on remember the log position they cover.
+     */
+    public void enableWal(String walFile, int fsyncBatch) throws IOException {
+        closeWal();
+        this.wal = new WriteAheadLog(walFile, backend, fsyncBatch);
+    }
+
+    // Commits the pending changes and marks the log as cleanly closed
+    public void closeWal() throws IOException {
+        if (wal != null) {
+            wal.close();
+            logger.info("Write-ahead log closed: " + wal.getStatistics());
+            wal = null;
+        }
+    }
+
+    public WriteAheadLog getWal() {
+        return wal;
+    }
+
+    public int getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Rebuilds the tracker of a run that did not finish: the snapshot if it was written
+     * during that run (same log run id), then every logged change after its position.
+     * Without a matching snapshot the whole log is replayed into an empty tracker.
+     */
+    public static ParcelTracker recover(String snapshotFile, String walFile) throws IOException {
+        long[] header = WriteAheadLog.readHeader(walFile);
+        long runId = header[0];
+        ParcelTracker tracker = null;
+        long from = WriteAheadLog.HEADER_BYTES;
+        if (snapshotFile != null && Files.exists(Path.of(snapshotFile))) {
+            // a snapshot of another run is dropped before its archive is opened (that would cut
+            // the archive of the crashed run to the old length)
+            tracker = loadSnapshot(snapshotFile, true, runId);
+            if (tracker != null) {
+                from = tracker.snapshotWalPosition;
+            } else {
+                logger.info("[Recover] Snapshot " + snapshotFile + " is from another run, ignored");
+            }
+        }
+        if (tracker == null) {
+            tracker = new ParcelTracker(Backend.values()[(int) header[1]]);
+        }
+        long replayed = WriteAheadLog.replay(walFile, from, tracker);
+        logger.info(String.format("[Recover] %s + %d logged changes -> %d parcels",
+            from == WriteAheadLog.HEADER_BYTES ? "empty tracker" : snapshotFile, replayed,
+            tracker.countParcels(null, null, 0)));
+        return tracker;
+    }
+
+    public int getArchivedCount() {
+        return archivedTotal;
+    }
+
+    public void closeArchive() throws IOException {
+        if (archive != null) {
+            archive.close();
+        }
+    }
+
+    // Moves every parcel dispatched at or before currentTick - archiveIdleTicks to the archive.
+    // DISPATCHED buckets list parcels in dispatch order, so only the due ones are visited.
+    private void archiveIdle() {
+        int cutoff = currentTick - archiveIdleTicks;
+        int dispatched = ParcelStatus.DISPATCHED.ordinal();
+        int[] due = new int[16];
+        int dueCount = 0;
+        for (int c = 0; c < cityRegistry.size(); c++) {
+            for (int p = 1; p <= 3; p++) {
+                for (int slot = statusIndex.firstInBucket(dispatched, c, p);
+                        slot >= 0 && columns.getDispatchTick(slot) <= cutoff; slot = statusIndex.nextInBucket(slot)) {
+                    if (dueCount == due.length) {
+                        due = Arrays.copyOf(due, dueCount * 2);
+                    }
+                    due[dueCount++] = slot;
+                }
+            }
+        }
+        if (dueCount == 0) {
+            return;
+        }
+        try {
+            int[] historyStatus = new int[8];
+            int[] historyTick = new int[8];
+            for (int i = 0; i < dueCount; i++) {
+                int slot = due[i];
+                int changes = 0;
+                for (int entry = history.head(slot); entry >= 0; entry = history.previous(entry)) {
+                    changes++;
+                }
+                if (changes > historyStatus.length) {
+                    historyStatus = new int[changes];
+                    historyTick = new int[changes];
+                }
+                int index = changes;
+                for (int entry = history.head(slot); entry >= 0; entry = history.previous(entry)) {
+                    index--;  // newest -> oldest walk, stored oldest first
+                    historyStatus[index] = history.statusOf(entry);
+                    historyTick[index] = history.tickOf(entry);
+                }
+                archive.add(columns.getParcelID(slot), columns.getStatus(slot), columns.getPriority(slot),
+                    columns.getSizeIndex(slot), cityRegistry.nameOf(columns.getCityId(slot)),
+                    columns.getArrivalTick(slot), columns.getDispatchTick(slot), columns.getReturnCount(slot),
+                    historyStatus, historyTick, changes);
+            }
+            archive.flush(); // on disk before anything is dropped from memory
+        } catch (IOException e) {
+            logger.severe("[Error] Failed to archive dispatched parcels: " + e.getMessage());
+            throw new UncheckedIOException(e);
+        }
+        for (int i = 0; i < dueCount; i++) {
+            evict(due[i]);
+        }
+        logger.info(String.format("[Archive] %d parcels dispatched before tick %d moved to %s",
+            dueCount, cutoff + 1, archive.getFilePath()));
+    }
+
+    // Drops an archived parcel from every in-memory structure
+    private void evict(int slot) {
+        String parcelID = columns.getParcelID(slot);
+        int cityId = columns.getCityId(slot);
+        int priority = columns.getPriority(slot);
+        removeFromLookup(parcelID, columns.getIdKey(slot));
+        statusIndex.remove(slot, ParcelStatus.DISPATCHED.ordinal(), cityId, priority);
+        history.release(slot);
+        if (columns.release(slot)) {
+            int chunk = slot >>> ParcelColumns.CHUNK_BITS;
+            statusIndex.releaseChunk(chunk);
+            timeIndex.releaseChunk(chunk);
+            history.releaseHeads(chunk);
+        }
+        if (cityId * 3 + 3 > archivedCounts.length) {
+            archivedCounts = Arrays.copyOf(archivedCounts, Math.max(archivedCounts.length * 2, cityId * 3 + 3));
+        }
+        archivedCounts[cityId * 3 + priority - 1]++;
+        archivedTotal++;
+        size--;
+    }
+
+    private void removeFromLookup(String parcelID, long key) {
+        if (backend == Backend.OPEN_ADDRESSING) {
+            // a tombstone keeps the probe chains through this cell intact
+            int index = probe(keys, slotOf, key, parcelID);
+            if (keys[index] != 0) {
+                keys[index] = TOMBSTONE;
+                tombstones++;
+            }
+            // migrateStep copies cells without clearing them -> a migrated parcel is still
+            // in oldKeys and findSlot would fall back to that stale cell
+            if (oldKeys != null) {
+                index = probe(oldKeys, oldSlotOf, key, parcelID);
+                if (oldKeys[index] != 0) {
+                    oldKeys[index] = TOMBSTONE; // skipped by migrateStep
+                }
+            }
+            return;
+        }
+        if (!unlinkFromChain(table, parcelID) && oldTable != null) {
+            unlinkFromChain(oldTable, parcelID);
+        }
+    }
+
+    private boolean unlinkFromChain(ParcelNode[] buckets, String parcelID) {
+        int index = hash(parcelID, buckets.length);
+        ParcelNode previous = null;
+        for (ParcelNode current = buckets[index]; current != null; previous = current, current = current.next) {
+            if (current.parcelID.equals(parcelID)) {
+                if (previous == null) {
+                    buckets[index] = current.next;
+                } else {
+                    previous.next = current.next;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // slot of a parcel that can still change, archived parcels are read-only
+    private int liveSlot(String parcelID) {
+        int slot = findSlot(parcelID);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (isArchived(parcelID)) {
+            throw new IllegalStateException("Parcel is archived (read-only): " + parcelID);
+        }
+        throw new IllegalArgumentException("Parcel not found: " + parcelID);
+    }
+
+    private boolean isArchived(String parcelID) {
+        try {
+            return archive != null && archive.contains(parcelID);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ParcelRecord readArchived(String parcelID) {
+        try {
+            return archive.read(parcelID);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public String getStatistics() {
@@ -325,13 +991,16 @@ public class ParcelTracker {
         stats.append(String.format("Total Dispatched Parcels: %d\n", totalDispatched));
         stats.append(String.format("Total Returned Parcels: %d\n", totalReturned));
         stats.append(String.format("Parcels Still in System: %d\n", countParcelsInSystem()));
+        if (archive != null) {
+            stats.append(String.format("Archived Parcels (on disk): %d\n", archivedTotal));
+        }
         
         // Report city dispatches
         stats.append("\n=== City Dispatch Counts ===\n");
         int cityTotal = 0;
-        for (int i = 0; i < 5; i++) {
-            stats.append(String.format("%s: %d\n", getCityName(i), cityDispatches[i]));
-            cityTotal += cityDispatches[i];
+        for (int id = 0; id < cityRegistry.size(); id++) {
+            stats.append(String.format("%s: %d\n", cityRegistry.nameOf(id), cityDispatches[id]));
+            cityTotal += cityDispatches[id];
         }
         stats.append(String.format("Total City Dispatches: %d\n", cityTotal));
         
@@ -345,58 +1014,405 @@ public class ParcelTracker {
     }
 
     public int countTotalReturns() {
-        int totalReturns = 0;
-        for (ParcelNode node : table) {
-            while (node != null) {
-                if (node.status == ParcelStatus.RETURNED) {
-                    totalReturns++;
-                }
-                node = node.next;
-            }
-        }
-        return totalReturns;
+        return statusIndex.countStatus(ParcelStatus.RETURNED.ordinal());
     }
 
     public int countParcelsInSystem() {
-        int inSystem = 0;
-        for (ParcelNode node : table) {
-            while (node != null) {
-                if (node.status == ParcelStatus.IN_QUEUE || 
-                    node.status == ParcelStatus.SORTED) {
-                    inSystem++;
-                }
-                node = node.next;
+        return statusIndex.countStatus(ParcelStatus.IN_QUEUE.ordinal())
+            + statusIndex.countStatus(ParcelStatus.SORTED.ordinal());
+    }
+
+    /**
+     * Registers the configured cities up front (CITY_LIST order = city id order), so the
+     * dispatch report lists every city, also the ones nothing was dispatched to yet.
+     * Cities that only show up later in insert() are added at the end.
+     */
+    public void registerCities(String[] cityList) {
+        for (String city : cityList) {
+            internCity(city);
+            if (wal != null) {
+                wal.logCity(currentTick, city);
             }
         }
-        return inSystem;
     }
 
-    private String getCityName(int index) {
-        String[] cities = {"Istanbul", "Ankara", "Izmir", "Bursa", "Antalya"};
-        return cities[index];
+    // city id from the registry, the per-city counters grow with it
+    private int internCity(String city) {
+        int cityId = cityRegistry.intern(city);
+        if (cityId >= cityDispatches.length) {
+            cityDispatches = Arrays.copyOf(cityDispatches, Math.max(cityDispatches.length * 2, cityId + 1));
+        }
+        return cityId;
     }
 
     public int countCityDispatches(String city) {
-        for (int i = 0; i < 5; i++) {
-            if (getCityName(i).equals(city)) {
-                return cityDispatches[i];
-            }
-        }
-        return 0;
+        int cityId = cityRegistry.idOf(city);
+        return cityId < 0 ? 0 : cityDispatches[cityId];
     }
 
     public String getCityWithMaxDispatches() {
         int maxDispatches = -1;
         String maxCity = "None";
-        for (int i = 0; i < 5; i++) {
-            if (cityDispatches[i] > maxDispatches) {
-                maxDispatches = cityDispatches[i];
-                maxCity = getCityName(i);
+        for (int id = 0; id < cityRegistry.size(); id++) {
+            if (cityDispatches[id] > maxDispatches) {
+                maxDispatches = cityDispatches[id];
+                maxCity = cityRegistry.nameOf(id);
             }
         }
         return maxCity;
     }
 
+    // Binary snapshot (written/read through a memory-mapped FileChannel)::
+    // header [magic][version][backend][capacity][size][history entries] + counters,
+    // city names, dwell histograms, then every column as one contiguous section
+    // (27 bytes per parcel) and the status history (12 bytes per change).
+    // With the write-ahead log on, the log run id and position covered by the snapshot are
+    // stored too (recover() replays from there). The file is written under a temporary
+    // name and renamed, a crash while writing never leaves a half snapshot behind.
+    // With tiering on, only live parcels are written (slots renumbered densely) plus the
+    // archive file name/length and the archived counts, the archive itself stays where it is.
+    // Loading rebuilds columns, lookup table and history directly (no insert/updateStatus
+    // replay, no logging, no resizes) and the result is identical to the tracker that wrote it.
+    private static final int SNAPSHOT_MAGIC = 0x50545331; // "PTS1"
+    private static final int SNAPSHOT_VERSION = 3;
+
+    public void writeSnapshot(String filename) throws IOException {
+        // live slots in order, newSlot = their position in the snapshot (-1 -> archived)
+        int[] live = new int[size];
+        int[] newSlot = new int[columns.count()];
+        int count = 0;
+        for (int slot = 0; slot < newSlot.length; slot++) {
+            if (columns.isReleased(slot)) {
+                newSlot[slot] = -1;
+            } else {
+                newSlot[slot] = count;
+                live[count++] = slot;
+            }
+        }
+        int entries = 0;
+        for (int entry = 0; entry < history.size(); entry++) {
+            if (history.isLive(entry)) {
+                entries++;
+            }
+        }
+        int cities = cityRegistry.size();
+        long bytes = 6 * 4 + 6 * 4 + 4 + 4 * cityDispatches.length + 3 * 16
+            + stringBytes(maxDelayParcel) + 4 + 4 * LatencyHistogram.serializedBytes();
+        for (int id = 0; id < cities; id++) {
+            bytes += stringBytes(cityRegistry.nameOf(id));
+            bytes += 1 + (hasCityDwell(id) ? LatencyHistogram.serializedBytes() : 0);
+        }
+        bytes += 1;
+        if (archive != null) {
+            archive.flush();
+            bytes += stringBytes(archive.getFilePath()) + 8 + 4 + 4 + 4 + 4 * archivedCounts.length;
+        }
+        if (wal != null) {
+            wal.commit(); // everything up to the position below is durable before the snapshot
+        }
+        bytes += 8 + 8;
+        int otherIds = 0;
+        bytes += 4;
+        for (int i = 0; i < count; i++) {
+            if (columns.getIdKey(live[i]) < 0) {
+                otherIds++;
+                bytes += 4 + stringBytes(columns.getParcelID(live[i]));
+            }
+        }
+        bytes += 27L * count + 12L * entries;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot too large for one mapping: " + bytes + " bytes");
+        }
+
+        Path temporary = Path.of(filename + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            out.putInt(SNAPSHOT_MAGIC);
+            out.putInt(SNAPSHOT_VERSION);
+            out.putInt(backend.ordinal());
+            out.putInt(capacity);
+            out.putInt(count);
+            out.putInt(entries);
+            out.putInt(currentTick);
+            out.putInt(totalGenerated);
+            out.putInt(totalEnqueued);
+            out.putInt(totalDispatched);
+            out.putInt(totalReturned);
+            out.putInt(returnedMoreThanOnce);
+            out.putInt(cityDispatches.length);
+            for (int dispatches : cityDispatches) {
+                out.putInt(dispatches);
+            }
+            for (int priority = 1; priority <= 3; priority++) {
+                out.putLong(sortWaitTotal[priority]);
+                out.putInt(sortWaitCount[priority]);
+                out.putInt(sortWaitMax[priority]);
+            }
+            putString(out, maxDelayParcel);
+
+            // cities in id order -> the registry gets the same ids back
+            out.putInt(cities);
+            for (int id = 0; id < cities; id++) {
+                putString(out, cityRegistry.nameOf(id));
+            }
+            dwellAll.writeTo(out);
+            for (int priority = 1; priority <= 3; priority++) {
+                dwellByPriority[priority].writeTo(out);
+            }
+            for (int id = 0; id < cities; id++) {
+                out.put((byte) (hasCityDwell(id) ? 1 : 0));
+                if (hasCityDwell(id)) {
+                    dwellByCity[id].writeTo(out);
+                }
+            }
+            out.put((byte) (archive != null ? 1 : 0));
+            if (archive != null) {
+                putString(out, archive.getFilePath());
+                out.putLong(archive.bytes());
+                out.putInt(archiveIdleTicks);
+                out.putInt(archivedTotal);
+                out.putInt(archivedCounts.length);
+                for (int archived : archivedCounts) {
+                    out.putInt(archived);
+                }
+            }
+            out.putLong(wal != null ? wal.getRunId() : 0);
+            out.putLong(wal != null ? wal.position() : 0);
+
+            out.putInt(otherIds);
+            for (int i = 0; i < count; i++) {
+                if (columns.getIdKey(live[i]) < 0) {
+                    out.putInt(i);
+                    putString(out, columns.getParcelID(live[i]));
+                }
+            }
+            for (int i = 0; i < count; i++) out.putLong(columns.getIdKey(live[i]));
+            for (int i = 0; i < count; i++) out.put((byte) columns.getStatus(live[i]));
+            for (int i = 0; i < count; i++) out.put((byte) columns.getPriority(live[i]));
+            for (int i = 0; i < count; i++) out.put((byte) columns.getSizeIndex(live[i]));
+            for (int i = 0; i < count; i++) out.putInt(columns.getCityId(live[i]));
+            for (int i = 0; i < count; i++) out.putInt(columns.getArrivalTick(live[i]));
+            for (int i = 0; i < count; i++) out.putInt(columns.getDispatchTick(live[i]));
+            for (int i = 0; i < count; i++) out.putInt(columns.getReturnCount(live[i]));
+
+            // oldest first, the previous links are rebuilt by appending in the same order
+            for (int entry = 0; entry < history.size(); entry++) {
+                if (history.isLive(entry)) {
+                    out.putInt(newSlot[history.slotOf(entry)]);
+                    out.putInt(history.statusOf(entry));
+                    out.putInt(history.tickOf(entry));
+                }
+            }
+            out.force();
+        }
+        Files.move(temporary, Path.of(filename), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info(String.format("Wrote ParcelTracker snapshot %s (%d parcels, %d bytes)", filename, count, bytes));
+    }
+
+    public static ParcelTracker loadFromSnapshot(String filename) throws IOException {
+        return loadSnapshot(filename, false, 0);
+    }
+
+    // matchRun -> only a snapshot written during log run walRunId is loaded, otherwise null
+    // is returned as soon as the run id is read, the archive is never opened for it
+    private static ParcelTracker loadSnapshot(String filename, boolean matchRun, long walRunId) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a ParcelTracker snapshot: " + filename);
+            }
+            int version = in.getInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            ParcelTracker tracker = new ParcelTracker(Backend.values()[in.getInt()]);
+            int capacity = in.getInt();
+            int count = in.getInt();
+            int entries = in.getInt();
+            tracker.currentTick = in.getInt();
+            tracker.totalGenerated = in.getInt();
+            tracker.totalEnqueued = in.getInt();
+            tracker.totalDispatched = in.getInt();
+            tracker.totalReturned = in.getInt();
+            tracker.returnedMoreThanOnce = in.getInt();
+            int[] cityDispatches = new int[in.getInt()];
+            for (int i = 0; i < cityDispatches.length; i++) {
+                cityDispatches[i] = in.getInt();
+            }
+            tracker.cityDispatches = cityDispatches;
+            for (int priority = 1; priority <= 3; priority++) {
+                tracker.sortWaitTotal[priority] = in.getLong();
+                tracker.sortWaitCount[priority] = in.getInt();
+                tracker.sortWaitMax[priority] = in.getInt();
+            }
+            tracker.maxDelayParcel = getString(in);
+
+            int cities = in.getInt();
+            for (int id = 0; id < cities; id++) {
+                tracker.internCity(getString(in));
+            }
+            tracker.dwellAll.merge(LatencyHistogram.readFrom(in));
+            for (int priority = 1; priority <= 3; priority++) {
+                tracker.dwellByPriority[priority] = LatencyHistogram.readFrom(in);
+            }
+            tracker.dwellByCity = new LatencyHistogram[Math.max(8, cities)];
+            for (int id = 0; id < cities; id++) {
+                if (in.get() != 0) {
+                    tracker.dwellByCity[id] = LatencyHistogram.readFrom(in);
+                }
+            }
+            String archiveFile = null;
+            long archiveBytes = 0;
+            if (in.get() != 0) {
+                archiveFile = getString(in);
+                archiveBytes = in.getLong();
+                tracker.archiveIdleTicks = in.getInt();
+                tracker.archivedTotal = in.getInt();
+                tracker.archivedCounts = new int[in.getInt()];
+                for (int i = 0; i < tracker.archivedCounts.length; i++) {
+                    tracker.archivedCounts[i] = in.getInt();
+                }
+            }
+            tracker.snapshotWalRunId = in.getLong();
+            tracker.snapshotWalPosition = in.getLong();
+            if (matchRun && (tracker.snapshotWalRunId != walRunId || tracker.snapshotWalPosition <= 0)) {
+                return null;
+            }
+            if (archiveFile != null) {
+                tracker.archive = new ParcelArchive(archiveFile, archiveBytes);
+            }
+
+            int otherIds = in.getInt();
+            int[] otherSlots = new int[otherIds];
+            String[] otherNames = new String[otherIds];
+            for (int i = 0; i < otherIds; i++) {
+                otherSlots[i] = in.getInt();
+                otherNames[i] = getString(in);
+            }
+            // one view per column section, all of them advance slot by slot
+            int base = in.position();
+            ByteBuffer idKeys = section(in, base, 8L * count);
+            ByteBuffer status = section(in, base += 8 * count, count);
+            ByteBuffer priority = section(in, base += count, count);
+            ByteBuffer size = section(in, base += count, count);
+            ByteBuffer cityId = section(in, base += count, 4L * count);
+            ByteBuffer arrival = section(in, base += 4 * count, 4L * count);
+            ByteBuffer dispatch = section(in, base += 4 * count, 4L * count);
+            ByteBuffer returns = section(in, base += 4 * count, 4L * count);
+            in.position(base + 4 * count);
+            int nextOther = 0;
+            for (int slot = 0; slot < count; slot++) {
+                long key = idKeys.getLong();
+                String otherId = null;
+                if (key < 0) {
+                    if (nextOther >= otherIds || otherSlots[nextOther] != slot) {
+                        throw new IOException("Snapshot is missing the ID of slot " + slot);
+                    }
+                    otherId = otherNames[nextOther++];
+                }
+                tracker.columns.append(key, otherId, status.get(), priority.get(), size.get(),
+                    cityId.getInt(), arrival.getInt());
+                tracker.columns.setDispatchTick(slot, dispatch.getInt());
+                tracker.columns.setReturnCount(slot, returns.getInt());
+            }
+            tracker.rebuildLookup(capacity);
+
+            // the status and arrival-time indexes are rebuilt from the history in its
+            // original order, so every bucket lists its parcels in the same order as before
+            for (int i = 0; i < entries; i++) {
+                int slot = in.getInt();
+                int statusOrdinal = in.getInt();
+                int entry = tracker.history.append(slot, statusOrdinal, in.getInt());
+                int previous = tracker.history.previous(entry);
+                int city = tracker.columns.getCityId(slot);
+                int parcelPriority = tracker.columns.getPriority(slot);
+                if (previous < 0) {
+                    tracker.statusIndex.add(slot, statusOrdinal, city, parcelPriority);
+                    if (statusOrdinal != ParcelStatus.DISPATCHED.ordinal()) {
+                        tracker.timeIndex.add(slot, tracker.columns.getArrivalTick(slot));
+                    }
+                } else {
+                    int previousStatus = tracker.history.statusOf(previous);
+                    tracker.statusIndex.move(slot, previousStatus, statusOrdinal, city, parcelPriority);
+                    tracker.moveInTimeIndex(slot, previousStatus, statusOrdinal);
+                }
+            }
+            logger.info(String.format("Loaded ParcelTracker snapshot %s (%d parcels, %d status changes)",
+                filename, count, entries));
+            return tracker;
+        }
+    }
+
+    /**
+     * Text export as a converter on top of the binary snapshot
+     * (same output as exportToFile on the tracker that wrote the snapshot)
+     */
+    public static void convertSnapshotToText(String snapshotFile, String textFile) throws IOException {
+        ParcelTracker tracker = loadFromSnapshot(snapshotFile);
+        tracker.exportToFile(textFile);
+        tracker.closeArchive();
+    }
+
+    // Fills the lookup table of a freshly loaded tracker, sized once -> no resize while loading
+    private void rebuildLookup(int savedCapacity) {
+        int count = columns.count();
+        if (backend == Backend.OPEN_ADDRESSING) {
+            capacity = Math.max(capacity, savedCapacity);
+            while ((double) count / capacity > LOAD_FACTOR_THRESHOLD) {
+                capacity *= 2;
+            }
+            keys = new long[capacity];
+            slotOf = new int[capacity];
+            tombstones = 0;
+            for (int slot = 0; slot < count; slot++) {
+                long key = columns.getIdKey(slot);
+                int index = probe(keys, slotOf, key, columns.getParcelID(slot));
+                keys[index] = key;
+                slotOf[index] = slot;
+            }
+        } else {
+            capacity = Math.max(capacity, savedCapacity);
+            table = new ParcelNode[capacity];
+            for (int slot = 0; slot < count; slot++) {
+                String parcelID = columns.getParcelID(slot);
+                int index = hash(parcelID, capacity);
+                ParcelNode node = new ParcelNode(parcelID, slot);
+                node.next = table[index];
+                table[index] = node;
+            }
+        }
+        size = count;
+    }
+
+    private boolean hasCityDwell(int cityId) {
+        return cityId < dwellByCity.length && dwellByCity[cityId] != null;
+    }
+
+    private static ByteBuffer section(ByteBuffer buffer, int position, long length) {
+        return buffer.duplicate().position(position).limit(position + (int) length);
+    }
+
+    private static int stringBytes(String value) {
+        return 2 + 2 * value.length();
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        buffer.putShort((short) value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.putChar(value.charAt(i));
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+
     /**
      * Exports the current state of the ParcelTracker to a file for debugging
      * @param filename The name of the file to export to
@@ -406,31 +1422,32 @@ public class ParcelTracker {
             writer.println("=== ParcelTracker State Export ===");
             writer.println("Total Parcels: " + size);
             writer.println("Load Factor: " + getLoadFactor());
+            if (archive != null) {
+                writer.println("Archived Parcels: " + archivedTotal + " (in " + archive.getFilePath() + ")");
+            }
             writer.println("\nParcel Details:");
             writer.println("==============");
             
-            for (ParcelNode node : table) {
-                while (node != null) {
-                    writer.println("\nParcel ID: " + node.parcelID);
-                    writer.println("Status: " + node.status);
-                    writer.println("Priority: " + node.priority);
-                    writer.println("Size: " + node.size);
-                    writer.println("Destination: " + node.destinationCity);
-                    writer.println("Arrival Tick: " + node.arrivalTick);
-                    writer.println("Dispatch Tick: " + (node.dispatchTick == -1 ? "Not dispatched" : node.dispatchTick));
-                    writer.println("Return Count: " + node.returnCount);
-                    
-                    // Write status history
-                    writer.println("\nStatus History:");
-                    ParcelNode.StatusChange history = node.statusHistory;
-                    while (history != null) {
-                        writer.println("  " + history.status + " at tick " + history.tick);
-                        history = history.next;
-                    }
-                    writer.println("-------------------");
-                    
-                    node = node.next;
+            for (int slot = 0; slot < columns.count(); slot++) {
+                if (columns.isReleased(slot)) {
+                    continue;
+                }
+                ParcelRecord node = recordOf(slot);
+                writer.println("\nParcel ID: " + node.parcelID);
+                writer.println("Status: " + node.status);
+                writer.println("Priority: " + node.priority);
+                writer.println("Size: " + node.size);
+                writer.println("Destination: " + node.destinationCity);
+                writer.println("Arrival Tick: " + node.arrivalTick);
+                writer.println("Dispatch Tick: " + (node.dispatchTick == -1 ? "Not dispatched" : node.dispatchTick));
+                writer.println("Return Count: " + node.returnCount);
+                
+                // Write status history
+                writer.println("\nStatus History:");
+                for (int entry = history.head(slot); entry >= 0; entry = history.previous(entry)) {
+                    writer.println("  " + STATUSES[history.statusOf(entry)] + " at tick " + history.tickOf(entry));
                 }
+                writer.println("-------------------");
             }
             
             logger.info("Successfully exported ParcelTracker state to " + filename);
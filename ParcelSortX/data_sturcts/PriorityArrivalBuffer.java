@@ -0,0 +1,160 @@
+// Multi-lane arrival queue::
+// one ring per priority level (1 = Low, 2 = Medium, 3 = High), all lanes share the capacity
+// dequeue takes the head of the highest non-empty lane -> O(1), FIFO inside a lane
+// Aging (optional): a parcel waiting in lane L for agingTicks * L ticks is moved up to
+// lane L + 1, so a steady stream of high priority parcels cannot starve the rest.
+// Promoted parcels are put in arrival order (not at the tail), every lane stays sorted by
+// arrival tick -> the head is the oldest and a promoted parcel never hides behind younger ones
+
+package data_sturcts;
+import main.*;
+
+public class PriorityArrivalBuffer extends ArrivalBuffer {
+    private static final int LANES = 3;
+
+    private final Parcel[][] lanes;
+    private final int[] heads;
+    private final int[] tails;
+    private final int mask;
+    private int size;
+    private final int agingTicks; // 0 -> aging disabled
+    private int promotedCount;
+
+    public PriorityArrivalBuffer(int capacity) {
+        this(capacity, 0);
+    }
+
+    public PriorityArrivalBuffer(int capacity, int agingTicks) {
+        super(capacity);
+        // every lane must be able to hold the whole capacity on its own
+        int slots = 1;
+        while (slots < capacity) {
+            slots <<= 1;
+        }
+        this.lanes = new Parcel[LANES][slots];
+        this.heads = new int[LANES];
+        this.tails = new int[LANES];
+        this.mask = slots - 1;
+        this.size = 0;
+        this.agingTicks = agingTicks;
+        this.promotedCount = 0;
+    }
+
+    @Override
+    protected boolean offer(Parcel parcel) {
+        if (isFull()) {
+            return false;
+        }
+        push(laneOf(parcel.getPriority()), parcel);
+        size++;
+        return true;
+    }
+
+    @Override
+    protected Parcel poll() {
+        int lane = headLane();
+        if (lane < 0) {
+            return null;
+        }
+        size--;
+        return pop(lane);
+    }
+
+    // same head selection as poll() -> peek() shows the parcel the next dequeue() removes
+    @Override
+    public Parcel peek() {
+        int lane = headLane();
+        return lane < 0 ? null : lanes[lane][heads[lane] & mask];
+    }
+
+    // Highest non-empty lane after aging, -1 if the buffer is empty
+    private int headLane() {
+        if (isEmpty()) {
+            return -1;
+        }
+        if (agingTicks > 0) {
+            promoteStarved();
+        }
+        for (int lane = LANES - 1; lane >= 0; lane--) {
+            if (tails[lane] != heads[lane]) {
+                return lane;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Dispatch order: High lane first, then Medium, then Low
+    @Override
+    public Parcel[] toArray() {
+        Parcel[] parcels = new Parcel[size];
+        int index = 0;
+        for (int lane = LANES - 1; lane >= 0; lane--) {
+            for (int pos = heads[lane]; pos != tails[lane]; pos++) {
+                parcels[index++] = lanes[lane][pos & mask];
+            }
+        }
+        return parcels;
+    }
+
+    public int laneSize(int priority) {
+        int lane = laneOf(priority);
+        return tails[lane] - heads[lane];
+    }
+
+    public int getPromotedCount() {
+        return promotedCount;
+    }
+
+    // Only lane heads are checked: lanes are sorted by arrival tick so the head is always the oldest parcel
+    private void promoteStarved() {
+        int currentTick = main.Main.getCurrentTick();
+        for (int lane = 0; lane < LANES - 1; lane++) {
+            int limit = agingTicks * (lane + 1);
+            while (tails[lane] != heads[lane]) {
+                Parcel oldest = lanes[lane][heads[lane] & mask];
+                if (currentTick - oldest.getArrivalTick() < limit) {
+                    break;
+                }
+                insertByArrival(lane + 1, pop(lane));
+                promotedCount++;
+            }
+        }
+    }
+
+    private void push(int lane, Parcel parcel) {
+        lanes[lane][tails[lane] & mask] = parcel;
+        tails[lane]++;
+    }
+
+    // Behind every parcel of the lane that arrived at or before it, younger ones move one slot back
+    // (promotions are rare and the lane is short, the shift stays small)
+    private void insertByArrival(int lane, Parcel parcel) {
+        int pos = tails[lane];
+        while (pos != heads[lane] && lanes[lane][(pos - 1) & mask].getArrivalTick() > parcel.getArrivalTick()) {
+            lanes[lane][pos & mask] = lanes[lane][(pos - 1) & mask];
+            pos--;
+        }
+        lanes[lane][pos & mask] = parcel;
+        tails[lane]++;
+    }
+
+    private Parcel pop(int lane) {
+        int index = heads[lane] & mask;
+        Parcel removed = lanes[lane][index];
+        lanes[lane][index] = null;
+        heads[lane]++;
+        return removed;
+    }
+
+    private static int laneOf(int priority) {
+        if (priority < 1 || priority > LANES) {
+            throw new IllegalArgumentException("Invalid priority value: " + priority);
+        }
+        return priority - 1;
+    }
+}
@@ -0,0 +1,200 @@
+// Hierarchical timing wheel for returned (misrouted) parcels::
+// a returned parcel is scheduled for re-sorting after a backoff that depends on its
+// return count (backoff[returnCount - 1], the last value repeats), and every tick
+// advance() hands back ALL parcels that became due, as one batch.
+// 3 wheels of 64 buckets: level 0 = 1 tick per bucket, level 1 = 64 ticks, level 2 = 4096 ticks.
+// A parcel is put in the lowest wheel whose revolution contains its due tick and is moved
+// (cascaded) one wheel down when the clock reaches its bucket; due ticks past level 2 wait in
+// an overflow list. Scheduling is O(1), a tick costs O(1) + the parcels it releases / cascades.
+// Same rule as ReturnStack: a parcel returned MAX_RETRY_COUNT times is removed from the system.
+
+package data_sturcts;
+import java.util.logging.Logger;
+import main.Parcel;
+
+public class RetryScheduler {
+    private static final Logger logger = Logger.getLogger(RetryScheduler.class.getName());
+    private static final int MAX_RETRY_COUNT = 3;
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 3;
+    private static final Parcel[] NONE = new Parcel[0];
+
+    //Node class::
+    private class Node {
+        Parcel parcel;
+        int dueTick;
+        Node next;
+
+        Node(Parcel parcel, int dueTick) {
+            this.parcel = parcel;
+            this.dueTick = dueTick;
+            this.next = null;
+        }
+    }
+
+    // [level][bucket] FIFO lists -> parcels due on the same tick come back in return order
+    private final Node[][] heads = new Node[LEVELS][WHEEL_SIZE];
+    private final Node[][] tails = new Node[LEVELS][WHEEL_SIZE];
+    private Node overflowHead;
+    private Node overflowTail;
+    private final int[] backoff;
+    private int currentTick;
+    private int size;
+    private int maxSize;
+    private long scheduled;
+    private long released;
+    private long dropped;
+
+    /**
+     * @param backoff ticks to wait after the 1st, 2nd ... return (e.g. {1, 2, 4})
+     * @param startTick the clock starts here, the first advance() is startTick + 1
+     */
+    public RetryScheduler(int[] backoff, int startTick) {
+        if (backoff.length == 0) {
+            throw new IllegalArgumentException("Retry backoff needs at least one value");
+        }
+        for (int ticks : backoff) {
+            if (ticks < 1) {
+                throw new IllegalArgumentException("Retry backoff must be at least 1 tick: " + ticks);
+            }
+        }
+        this.backoff = backoff.clone();
+        this.currentTick = startTick;
+    }
+
+    /**
+     * Counts the return on the parcel and schedules it (same bookkeeping as ReturnStack.push)
+     * @param tick tick of the return, the backoff is counted from here
+     * @return due tick, -1 if the parcel exceeded the retry limit and was dropped
+     */
+    public int schedule(Parcel parcel, int tick) {
+        if (parcel.getReturnCount() >= MAX_RETRY_COUNT) {
+            logger.warning("\u001B[31m" + "Parcel " + parcel.getParcelID() +
+                         " has exceeded maximum retry count. Removing from system." + "\u001B[0m");
+            dropped++;
+            return -1;
+        }
+        parcel.incrementReturnCount();
+        parcel.setStatus(Parcel.Status.Returned);
+        int dueTick = Math.max(tick, currentTick) + backoff[Math.min(parcel.getReturnCount(), backoff.length) - 1];
+        place(new Node(parcel, dueTick));
+        size++;
+        maxSize = Math.max(maxSize, size);
+        scheduled++;
+        logger.info("\u001B[33m" + "Parcel " + parcel.getParcelID() +
+                   " scheduled for retry at tick " + dueTick + " (Retry #" + parcel.getReturnCount() + ")" + "\u001B[0m");
+        return dueTick;
+    }
+
+    /**
+     * Moves the clock to the given tick and returns every parcel due by then (oldest due first).
+     */
+    public Parcel[] advance(int tick) {
+        Node first = null;
+        Node last = null;
+        int count = 0;
+        while (currentTick < tick) {
+            currentTick++;
+            cascade();
+            int bucket = currentTick & WHEEL_MASK;
+            Node due = heads[0][bucket];
+            if (due == null) continue;
+            // whole bucket detached at once
+            if (first == null) {
+                first = due;
+            } else {
+                last.next = due;
+            }
+            last = tails[0][bucket];
+            heads[0][bucket] = null;
+            tails[0][bucket] = null;
+            for (Node node = due; node != null; node = node.next) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return NONE;
+        }
+        Parcel[] batch = new Parcel[count];
+        int index = 0;
+        for (Node node = first; node != null; node = node.next) {
+            batch[index++] = node.parcel;
+        }
+        size -= count;
+        released += count;
+        return batch;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public String getStatistics() {
+        return String.format("%d scheduled, %d released, %d dropped after %d returns, %d pending (max %d)",
+            scheduled, released, dropped, MAX_RETRY_COUNT, size, maxSize);
+    }
+
+    // Buckets of the higher wheels whose time has come are spread over the lower wheels
+    private void cascade() {
+        int levelTicks = 1 << (WHEEL_BITS * LEVELS);
+        if ((currentTick & (levelTicks - 1)) == 0 && overflowHead != null) {
+            Node node = overflowHead;
+            overflowHead = null;
+            overflowTail = null;
+            replace(node);
+        }
+        for (int level = LEVELS - 1; level >= 1; level--) {
+            int shift = WHEEL_BITS * level;
+            if ((currentTick & ((1 << shift) - 1)) != 0) continue;
+            int bucket = (currentTick >>> shift) & WHEEL_MASK;
+            Node node = heads[level][bucket];
+            heads[level][bucket] = null;
+            tails[level][bucket] = null;
+            replace(node);
+        }
+    }
+
+    private void replace(Node node) {
+        while (node != null) {
+            Node next = node.next;
+            place(node);
+            node = next;
+        }
+    }
+
+    // lowest wheel whose current revolution contains the due tick
+    // (due == currentTick only happens in a cascade, that level-0 bucket is collected right after)
+    private void place(Node node) {
+        node.next = null;
+        int due = Math.max(node.dueTick, currentTick);
+        for (int level = 0; level < LEVELS; level++) {
+            int revolution = WHEEL_BITS * (level + 1);
+            if ((due >>> revolution) == (currentTick >>> revolution)) {
+                int bucket = (due >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+                if (tails[level][bucket] == null) {
+                    heads[level][bucket] = node;
+                } else {
+                    tails[level][bucket].next = node;
+                }
+                tails[level][bucket] = node;
+                return;
+            }
+        }
+        if (overflowTail == null) {
+            overflowHead = node;
+        } else {
+            overflowTail.next = node;
+        }
+        overflowTail = node;
+    }
+}
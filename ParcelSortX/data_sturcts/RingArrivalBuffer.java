@@ -0,0 +1,70 @@
+// Array (ring buffer) implementation of the arrival queue::
+// slots are allocated once in the constructor, enqueue/dequeue only move the indexes
+// slot count is rounded up to a power of two so wrap-around is a mask instead of a %
+
+package data_sturcts;
+import main.*;
+
+public class RingArrivalBuffer extends ArrivalBuffer {
+    private final Parcel[] ring;
+    private final int mask;
+    private int head; // next slot to read
+    private int tail; // next slot to write
+
+    public RingArrivalBuffer(int capacity) {
+        super(capacity);
+        int slots = 1;
+        while (slots < capacity) {
+            slots <<= 1;
+        }
+        this.ring = new Parcel[slots];
+        this.mask = slots - 1;
+        this.head = 0;
+        this.tail = 0;
+    }
+
+    @Override
+    protected boolean offer(Parcel parcel) {
+        if (isFull()) {
+            return false;
+        }
+        ring[tail & mask] = parcel;
+        tail++;
+        return true;
+    }
+
+    @Override
+    protected Parcel poll() {
+        if (isEmpty()) {
+            return null;
+        }
+        int index = head & mask;
+        Parcel removed = ring[index];
+        ring[index] = null; // let GC collect dispatched parcels
+        head++;
+        return removed;
+    }
+
+    @Override
+    public Parcel peek() {
+        if (isEmpty()) {
+            return null;
+        }
+        return ring[head & mask];
+    }
+
+    @Override
+    public int size() {
+        return tail - head; // still correct after int overflow of both counters
+    }
+
+    @Override
+    public Parcel[] toArray() {
+        int count = size();
+        Parcel[] parcels = new Parcel[count];
+        for (int i = 0; i < count; i++) {
+            parcels[i] = ring[(head + i) & mask];
+        }
+        return parcels;
+    }
+}
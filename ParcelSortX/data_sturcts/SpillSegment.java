@@ -0,0 +1,223 @@
+// Memory-mapped overflow segment for the ArrivalBuffer::
+// parcels that do not fit in the in-memory queue are appended to a file on local disk
+// and read back in the same (FIFO) order when the queue has room again.
+// Circular: a record is never changed after it is written, the write/read positions
+// only move forward and wrap to 0 at the end of the segment, so the bytes of the records
+// already read back are reused while a backlog is still on disk. A record never straddles
+// the end: when it does not fit in the tail, the tail is skipped (marked with idLength -1
+// if there is room for the short) and the record goes to 0, once the reader is past it.
+//
+// Record layout (big endian, 12 + 2 * (id length + city length) bytes):
+// [short idLength][char... id][short cityLength][char... city]
+// [byte priority][byte size][int arrivalTick][byte status][byte returnCount]
+
+package data_sturcts;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+import main.Parcel;
+
+public class SpillSegment {
+    private static final Logger logger = Logger.getLogger(SpillSegment.class.getName());
+    private static final String[] SIZES = {"Small", "Medium", "Large"};
+    private static final Parcel.Status[] STATUSES = Parcel.Status.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer segment;
+    private final int segmentBytes;
+    private int writePos;
+    private int readPos;
+    private int usedBytes;        // readPos -> writePos, including a skipped tail
+    private volatile int pending; // read without the lock on the enqueue fast path
+    private Parcel peeked;        // decoded head record, see peek()
+    private int peekedEnd;
+
+    // Throughput counters (to size the segment)
+    private long spilledParcels;
+    private long refilledParcels;
+    private long spilledBytes;
+    private long refilledBytes;
+    private int peakBytes;
+    private long rejectedParcels;
+
+    public SpillSegment(String filePath, int segmentBytes) throws IOException {
+        if (segmentBytes <= 0) {
+            throw new IllegalArgumentException("Spill segment size must be positive");
+        }
+        this.segmentBytes = segmentBytes;
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        logger.info(String.format("[Initialize] Spill segment %s mapped (%d bytes)", filePath, segmentBytes));
+    }
+
+    // false -> segment is full, caller has to discard the parcel
+    public synchronized boolean append(Parcel parcel) {
+        String id = parcel.getParcelID();
+        String city = parcel.getDestinationCity();
+        int recordBytes = 12 + 2 * (id.length() + city.length());
+        boolean wrapped = pending > 0 && writePos <= readPos; // writer is behind the reader
+        if (!wrapped && writePos + recordBytes > segmentBytes) {
+            if (recordBytes > readPos) {
+                rejectedParcels++;
+                return false;
+            }
+            // tail too small -> continue at the start of the segment
+            if (segmentBytes - writePos >= 2) {
+                segment.putShort(writePos, (short) -1);
+            }
+            usedBytes += segmentBytes - writePos;
+            writePos = 0;
+        } else if (wrapped && writePos + recordBytes > readPos) {
+            rejectedParcels++;
+            return false;
+        }
+        int pos = writePos;
+        pos = putString(pos, id);
+        pos = putString(pos, city);
+        segment.put(pos++, (byte) parcel.getPriority());
+        segment.put(pos++, (byte) ArrivalBuffer.sizeIndex(parcel.getSize()));
+        segment.putInt(pos, parcel.getArrivalTick());
+        pos += 4;
+        segment.put(pos++, (byte) parcel.getStatus().ordinal());
+        segment.put(pos++, (byte) parcel.getReturnCount());
+        writePos = pos;
+
+        pending++;
+        spilledParcels++;
+        spilledBytes += recordBytes;
+        usedBytes += recordBytes;
+        peakBytes = Math.max(peakBytes, usedBytes);
+        return true;
+    }
+
+    // Oldest spilled parcel without removing it (decoded once, then cached until read)
+    public synchronized Parcel peek() {
+        if (pending == 0) {
+            return null;
+        }
+        if (peeked == null) {
+            if (readPos > segmentBytes - 2 || segment.getShort(readPos) < 0) {
+                usedBytes -= segmentBytes - readPos; // skipped tail, the writer wrapped here
+                readPos = 0;
+            }
+            int pos = readPos;
+            String id = getString(pos);
+            pos += 2 + 2 * id.length();
+            String city = getString(pos);
+            pos += 2 + 2 * city.length();
+            int priority = segment.get(pos++);
+            String size = SIZES[segment.get(pos++)];
+            int arrivalTick = segment.getInt(pos);
+            pos += 4;
+            Parcel.Status status = STATUSES[segment.get(pos++)];
+            int returnCount = segment.get(pos++);
+
+            peeked = new Parcel(id, city, priority, size, arrivalTick);
+            peeked.setStatus(status);
+            for (int i = 0; i < returnCount; i++) {
+                peeked.incrementReturnCount();
+            }
+            peekedEnd = pos;
+        }
+        return peeked;
+    }
+
+    // Oldest spilled parcel, or null when the segment is empty
+    public synchronized Parcel read() {
+        Parcel parcel = peek();
+        if (parcel == null) {
+            return null;
+        }
+        refilledBytes += peekedEnd - readPos;
+        usedBytes -= peekedEnd - readPos;
+        readPos = peekedEnd;
+        peeked = null;
+
+        pending--;
+        refilledParcels++;
+        if (pending == 0) {
+            readPos = writePos = usedBytes = 0; // drained -> start appending from the beginning again
+        }
+        return parcel;
+    }
+
+    public boolean hasPending() {
+        return pending > 0;
+    }
+
+    public int pendingCount() {
+        return pending;
+    }
+
+    public synchronized int usedBytes() {
+        return usedBytes;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public synchronized long getSpilledParcels() {
+        return spilledParcels;
+    }
+
+    public synchronized long getRefilledParcels() {
+        return refilledParcels;
+    }
+
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    public synchronized long getRefilledBytes() {
+        return refilledBytes;
+    }
+
+    public synchronized int getPeakBytes() {
+        return peakBytes;
+    }
+
+    public synchronized long getRejectedParcels() {
+        return rejectedParcels;
+    }
+
+    public synchronized String getStatistics() {
+        StringBuilder stats = new StringBuilder();
+        stats.append(String.format("Spilled Parcels: %d (%d bytes)\n", spilledParcels, spilledBytes));
+        stats.append(String.format("Refilled Parcels: %d (%d bytes)\n", refilledParcels, refilledBytes));
+        stats.append(String.format("Still on Disk: %d parcels\n", pending));
+        stats.append(String.format("Peak Segment Usage: %d / %d bytes\n", peakBytes, segmentBytes));
+        stats.append(String.format("Discarded (segment full): %d\n", rejectedParcels));
+        return stats.toString();
+    }
+
+    public synchronized void close() throws IOException {
+        segment.force();
+        channel.close();
+    }
+
+    private int putString(int pos, String value) {
+        segment.putShort(pos, (short) value.length());
+        pos += 2;
+        for (int i = 0; i < value.length(); i++) {
+            segment.putChar(pos, value.charAt(i));
+            pos += 2;
+        }
+        return pos;
+    }
+
+    private String getString(int pos) {
+        int length = segment.getShort(pos);
+        pos += 2;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = segment.getChar(pos);
+            pos += 2;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,150 @@
+// Append-only status history for the ParcelTracker::
+// one shared log of primitive entries instead of one object per status change.
+// Entry = 4 ints [slot][status][tick][previous entry of the same parcel (-1 = none)],
+// so the history of one parcel is walked newest -> oldest through the previous links
+// starting at head[slot]. Entries are stored in chunks, growing never copies them.
+// New entries can be streamed to disk (writeNewEntries), the log itself never changes
+// an entry once it is written. release(slot) drops a parcel's history (archived parcel),
+// a chunk is freed when none of its entries is live any more and it was already streamed.
+// Without streaming chunks are freed right away, so streaming has to start before the first
+// release (writeNewEntries fails fast otherwise instead of writing a log with holes).
+
+package data_sturcts;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class StatusHistoryLog {
+    private static final int ENTRY_INTS = 4;
+    private static final int CHUNK_BITS = 10;                 // entries per chunk = 1024
+    private static final int CHUNK_ENTRIES = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_ENTRIES - 1;
+
+    private int[][] entries = new int[4][];
+    private int count;
+    private int[][] heads = new int[4][];  // slot -> newest entry, -1 = none
+    private int streamed;                  // entries already written by writeNewEntries
+    private boolean streaming;             // writeNewEntries was used -> keep unstreamed chunks
+    private boolean freedUnstreamed;       // a chunk was freed before streaming started
+    private int[] liveInChunk = new int[4];
+
+    // Adds a status change and returns its entry index
+    public int append(int slot, int status, int tick) {
+        int entry = count;
+        int chunk = entry >>> CHUNK_BITS;
+        if (chunk == entries.length) {
+            int[][] grown = new int[entries.length * 2][];
+            System.arraycopy(entries, 0, grown, 0, entries.length);
+            entries = grown;
+            liveInChunk = Arrays.copyOf(liveInChunk, entries.length);
+        }
+        if (entries[chunk] == null) {
+            entries[chunk] = new int[CHUNK_ENTRIES * ENTRY_INTS];
+        }
+        int offset = (entry & CHUNK_MASK) * ENTRY_INTS;
+        int[] data = entries[chunk];
+        data[offset] = slot;
+        data[offset + 1] = status;
+        data[offset + 2] = tick;
+        data[offset + 3] = head(slot);
+        setHead(slot, entry);
+        liveInChunk[chunk]++;
+        count++;
+        return entry;
+    }
+
+    // Drops every entry of the slot, frees the chunks that have no live entry left
+    public void release(int slot) {
+        int entry = head(slot);
+        while (entry >= 0) {
+            int previous = previous(entry);
+            int chunk = entry >>> CHUNK_BITS;
+            if (--liveInChunk[chunk] == 0 && chunk < count >>> CHUNK_BITS
+                    && (!streaming || chunk < streamed >>> CHUNK_BITS)) {
+                entries[chunk] = null;
+                freedUnstreamed |= !streaming;
+            }
+            entry = previous;
+        }
+        setHead(slot, -1);
+    }
+
+    // Frees the heads of a chunk of slots that were all released
+    public void releaseHeads(int slotChunk) {
+        if (slotChunk < heads.length) {
+            heads[slotChunk] = null;
+        }
+    }
+
+    // false -> the entry belonged to a released slot and is gone
+    public boolean isLive(int entry) {
+        int[] data = entries[entry >>> CHUNK_BITS];
+        return data != null && head(data[(entry & CHUNK_MASK) * ENTRY_INTS]) >= 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Newest entry of the parcel in this slot, -1 if it has no history
+    public int head(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk >= heads.length || heads[chunk] == null) {
+            return -1;
+        }
+        return heads[chunk][slot & CHUNK_MASK];
+    }
+
+    public int previous(int entry) {
+        return field(entry, 3);
+    }
+
+    public int slotOf(int entry) {
+        return field(entry, 0);
+    }
+
+    public int statusOf(int entry) {
+        return field(entry, 1);
+    }
+
+    public int tickOf(int entry) {
+        return field(entry, 2);
+    }
+
+    // Writes every entry appended since the last call (16 bytes each, same layout as in memory)
+    public int writeNewEntries(DataOutputStream out) throws IOException {
+        if (!streaming && freedUnstreamed) {
+            throw new IllegalStateException(
+                "History streaming has to start before parcels are archived, their entries are already freed");
+        }
+        int written = 0;
+        streaming = true;
+        for (; streamed < count; streamed++) {
+            int offset = (streamed & CHUNK_MASK) * ENTRY_INTS;
+            int[] data = entries[streamed >>> CHUNK_BITS];
+            for (int i = 0; i < ENTRY_INTS; i++) {
+                out.writeInt(data[offset + i]);
+            }
+            written++;
+        }
+        return written;
+    }
+
+    private int field(int entry, int index) {
+        return entries[entry >>> CHUNK_BITS][(entry & CHUNK_MASK) * ENTRY_INTS + index];
+    }
+
+    private void setHead(int slot, int entry) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk >= heads.length) {
+            int[][] grown = new int[Math.max(heads.length * 2, chunk + 1)][];
+            System.arraycopy(heads, 0, grown, 0, heads.length);
+            heads = grown;
+        }
+        if (heads[chunk] == null) {
+            heads[chunk] = new int[CHUNK_ENTRIES];
+            Arrays.fill(heads[chunk], -1);
+        }
+        heads[chunk][slot & CHUNK_MASK] = entry;
+    }
+}
@@ -0,0 +1,309 @@
+// Binary event log of every ParcelTracker change, for crash recovery::
+// insert / updateStatus / incrementReturnCount / incrementTotalReturnedParcels / updateDestination append
+// one small record to a direct buffer (no allocation per record). Group commit: the buffer
+// is written through the FileChannel and fsync'ed once every fsyncBatch records, so a
+// crash loses at most the last fsyncBatch changes. Records are appended after the change
+// was applied, a rejected change (duplicate insert ...) never reaches the log.
+// Recovery = last snapshot + replay of the records after the position stored in it
+// (ParcelTracker.recover).
+//
+// Header (HEADER_BYTES): [int magic][int version][long runId][byte backend][byte closed]
+// Records (big endian), an ID is [long key] + [short length][char...] if the key is not numeric:
+// INSERT       [byte 1][int tick][ID][int arrivalTick][byte status][byte priority][byte size][short length][char... city]
+// STATUS       [byte 2][int tick][ID][byte status]
+// RETURN       [byte 3][int tick][ID]
+// RETURN_TOTAL [byte 4][int tick]
+// CITY         [byte 5][int tick][short length][char... city]   (registerCities, keeps city ids on replay)
+// DESTINATION  [byte 6][int tick][ID][short length][char... city] (updateDestination, re-route)
+
+package data_sturcts;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+public class WriteAheadLog {
+    private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+    private static final int MAGIC = 0x5057414C; // "PWAL"
+    private static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 1 + 1;
+    private static final int CLOSED_FLAG_OFFSET = HEADER_BYTES - 1;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private static final byte INSERT = 1;
+    private static final byte STATUS = 2;
+    private static final byte RETURN = 3;
+    private static final byte RETURN_TOTAL = 4;
+    private static final byte CITY = 5;
+    private static final byte DESTINATION = 6;
+
+    private final String filePath;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final int fsyncBatch;
+    private final long runId;
+    private long writePos;       // end of the records already handed to the channel
+    private int unsynced;        // records since the last fsync
+    private long records;
+    private long syncs;
+
+    /**
+     * Starts a new log (an existing file is overwritten).
+     * @param fsyncBatch records per group commit, 1 -> fsync after every change
+     */
+    public WriteAheadLog(String filePath, ParcelTracker.Backend backend, int fsyncBatch) throws IOException {
+        if (fsyncBatch < 1) {
+            throw new IllegalArgumentException("fsync batch must be at least 1");
+        }
+        this.filePath = filePath;
+        this.fsyncBatch = fsyncBatch;
+        this.runId = System.currentTimeMillis() ^ System.nanoTime();
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putLong(runId).put((byte) backend.ordinal()).put((byte) 0);
+        header.flip();
+        write(header);
+        channel.force(false);
+        logger.info(String.format("[Initialize] Write-ahead log %s (fsync every %d changes)", filePath, fsyncBatch));
+    }
+
+    public void logInsert(int tick, String parcelID, int arrivalTick, int status, int priority,
+                          int sizeIndex, String city) {
+        reserve(1 + 4 + idBytes(parcelID) + 4 + 3 + 2 + 2 * city.length());
+        buffer.put(INSERT).putInt(tick);
+        putID(parcelID);
+        buffer.putInt(arrivalTick).put((byte) status).put((byte) priority).put((byte) sizeIndex);
+        putString(city);
+        recordAdded();
+    }
+
+    public void logStatus(int tick, String parcelID, int status) {
+        reserve(1 + 4 + idBytes(parcelID) + 1);
+        buffer.put(STATUS).putInt(tick);
+        putID(parcelID);
+        buffer.put((byte) status);
+        recordAdded();
+    }
+
+    public void logReturn(int tick, String parcelID) {
+        reserve(1 + 4 + idBytes(parcelID));
+        buffer.put(RETURN).putInt(tick);
+        putID(parcelID);
+        recordAdded();
+    }
+
+    public void logReturnTotal(int tick) {
+        reserve(1 + 4);
+        buffer.put(RETURN_TOTAL).putInt(tick);
+        recordAdded();
+    }
+
+    public void logCity(int tick, String city) {
+        reserve(1 + 4 + 2 + 2 * city.length());
+        buffer.put(CITY).putInt(tick);
+        putString(city);
+        recordAdded();
+    }
+
+    public void logDestination(int tick, String parcelID, String city) {
+        reserve(1 + 4 + idBytes(parcelID) + 2 + 2 * city.length());
+        buffer.put(DESTINATION).putInt(tick);
+        putID(parcelID);
+        putString(city);
+        recordAdded();
+    }
+
+    // Group commit: everything logged so far is written and fsync'ed
+    public void commit() throws IOException {
+        drain();
+        if (unsynced > 0) {
+            channel.force(false);
+            syncs++;
+            unsynced = 0;
+        }
+    }
+
+    // Log position covering every record so far (call commit() first for it to be durable)
+    public long position() {
+        return writePos + buffer.position();
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public String getStatistics() {
+        return String.format("%d changes logged (%d bytes), %d group commits", records, position(), syncs);
+    }
+
+    // Commits and marks the log as cleanly closed (no recovery needed on the next start)
+    public void close() throws IOException {
+        commit();
+        ByteBuffer closed = ByteBuffer.allocate(1).put(0, (byte) 1);
+        channel.write(closed, CLOSED_FLAG_OFFSET);
+        channel.force(false);
+        channel.close();
+    }
+
+    // true -> the log exists and its run did not close it (crash / kill)
+    public static boolean needsRecovery(String filePath) throws IOException {
+        Path path = Path.of(filePath);
+        if (!Files.exists(path) || Files.size(path) < HEADER_BYTES) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] header = in.readNBytes(HEADER_BYTES);
+            return ByteBuffer.wrap(header).getInt() == MAGIC && header[CLOSED_FLAG_OFFSET] == 0;
+        }
+    }
+
+    // [runId, backend ordinal] of an existing log
+    static long[] readHeader(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(Path.of(filePath)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a write-ahead log: " + filePath);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported write-ahead log version " + version);
+            }
+            long runId = in.readLong();
+            return new long[] {runId, in.readByte()};
+        }
+    }
+
+    /**
+     * Applies every record from the given position to the tracker (through its public
+     * methods). Stops at the first incomplete record, i.e. where the crash cut the log.
+     * @return number of records applied
+     */
+    static long replay(String filePath, long fromPosition, ParcelTracker tracker) throws IOException {
+        ParcelTracker.ParcelStatus[] statuses = ParcelTracker.ParcelStatus.values();
+        String[] sizes = {"Small", "Medium", "Large"};
+        long applied = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(Path.of(filePath)), BUFFER_BYTES))) {
+            in.skipNBytes(fromPosition);
+            while (true) {
+                int type = in.read();
+                if (type < INSERT || type > DESTINATION) {
+                    break; // end of log (or a zero-filled torn tail)
+                }
+                int tick = in.readInt();
+                if (tick != tracker.getCurrentTick()) {
+                    tracker.setCurrentTick(tick);
+                }
+                if (type == INSERT) {
+                    String parcelID = readID(in);
+                    int arrivalTick = in.readInt();
+                    ParcelTracker.ParcelStatus status = statuses[in.readByte()];
+                    int priority = in.readByte();
+                    String size = sizes[in.readByte()];
+                    tracker.insert(parcelID, status, arrivalTick, readString(in), priority, size);
+                } else if (type == STATUS) {
+                    String parcelID = readID(in);
+                    tracker.updateStatus(parcelID, statuses[in.readByte()]);
+                } else if (type == RETURN) {
+                    tracker.incrementReturnCount(readID(in));
+                } else if (type == CITY) {
+                    tracker.registerCities(new String[] {readString(in)});
+                } else if (type == DESTINATION) {
+                    String parcelID = readID(in);
+                    tracker.updateDestination(parcelID, readString(in));
+                } else {
+                    tracker.incrementTotalReturnedParcels();
+                }
+                applied++;
+            }
+        } catch (EOFException e) {
+            logger.warning(String.format("Write-ahead log %s ends in an incomplete record, replayed %d changes",
+                filePath, applied));
+        }
+        return applied;
+    }
+
+    private void recordAdded() {
+        records++;
+        if (++unsynced >= fsyncBatch) {
+            try {
+                commit();
+            } catch (IOException e) {
+                logger.severe("[Error] Write-ahead log commit failed: " + e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void reserve(int recordBytes) {
+        if (buffer.remaining() >= recordBytes) {
+            return;
+        }
+        if (recordBytes > BUFFER_BYTES) {
+            throw new IllegalArgumentException("Record too large for the write-ahead log");
+        }
+        try {
+            drain();
+        } catch (IOException e) {
+            logger.severe("[Error] Write-ahead log write failed: " + e.getMessage());
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            writePos += channel.write(data, writePos);
+        }
+    }
+
+    private static int idBytes(String parcelID) {
+        return ParcelColumns.keyOf(parcelID) < 0 ? 8 + 2 + 2 * parcelID.length() : 8;
+    }
+
+    private void putID(String parcelID) {
+        long key = ParcelColumns.keyOf(parcelID);
+        buffer.putLong(key);
+        if (key < 0) {
+            putString(parcelID);
+        }
+    }
+
+    private void putString(String value) {
+        buffer.putShort((short) value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.putChar(value.charAt(i));
+        }
+    }
+
+    private static String readID(DataInputStream in) throws IOException {
+        long key = in.readLong();
+        return key < 0 ? readString(in) : ParcelColumns.idOfKey(key);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readShort();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,125 @@
+package main;
+
+import data_sturcts.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Stress test of the ConcurrentArrivalBuffer (many intake belts, one sorter thread)::
+// N producer threads enqueue their own parcels (a full queue -> retry the same parcel),
+// one consumer drains them, then every parcel ID must have been seen exactly once and
+// the running counters must be back to 0. Exit code 1 on any lost / duplicated parcel.
+// Usage: java main.ArrivalBufferStressTest [producers] [parcelsPerProducer] [capacity] [rounds]
+public class ArrivalBufferStressTest {
+    public static void main(String[] args) throws InterruptedException {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int parcelsPerProducer = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        Logger.getLogger("").setLevel(Level.OFF);
+
+        boolean passed = true;
+        for (int round = 1; round <= rounds; round++) {
+            passed &= runRound(round, producers, parcelsPerProducer, capacity);
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean runRound(int round, int producers, int parcelsPerProducer, int capacity)
+            throws InterruptedException {
+        ConcurrentArrivalBuffer buffer = new ConcurrentArrivalBuffer(capacity);
+        AtomicLong fullRetries = new AtomicLong();
+        String[] cities = {"Istanbul", "Ankara", "Izmir", "Bursa", "Antalya"};
+        String[] sizes = {"Small", "Medium", "Large"};
+
+        Thread[] workers = new Thread[producers];
+        for (int t = 0; t < producers; t++) {
+            final int producer = t;
+            workers[t] = new Thread(() -> {
+                long retries = 0;
+                for (int i = 0; i < parcelsPerProducer; i++) {
+                    Parcel parcel = new Parcel(producer + "-" + i, cities[i % cities.length],
+                        1 + i % 3, sizes[i % sizes.length], i);
+                    while (!buffer.enqueue(parcel)) {
+                        retries++;
+                        Thread.yield(); // full -> let the consumer run, the parcel must not be dropped
+                    }
+                }
+                fullRetries.addAndGet(retries);
+            });
+        }
+
+        // seen[producer * parcelsPerProducer + i] counts how often parcel "producer-i" came out
+        int total = producers * parcelsPerProducer;
+        byte[] seen = new byte[total];
+        int received = 0;
+        int duplicates = 0;
+        int foreign = 0;
+        Parcel[] batch = new Parcel[8];
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        while (received < total) {
+            int n = buffer.drainTo(batch, batch.length);
+            if (n == 0) {
+                if (!anyAlive(workers) && buffer.size() == 0 && buffer.drainTo(batch, batch.length) == 0) {
+                    break; // producers are done and nothing is left -> the rest is lost
+                }
+                Thread.yield();
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                String id = batch[i].getParcelID();
+                batch[i] = null;
+                int dash = id.indexOf('-');
+                int producer = Integer.parseInt(id.substring(0, dash));
+                int index = Integer.parseInt(id.substring(dash + 1));
+                if (producer >= producers || index >= parcelsPerProducer) {
+                    foreign++;
+                    continue;
+                }
+                if (seen[producer * parcelsPerProducer + index]++ > 0) {
+                    duplicates++;
+                }
+                received++;
+            }
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int lost = 0;
+        for (byte count : seen) {
+            if (count == 0) lost++;
+        }
+        int leftCounters = buffer.size();
+        for (int priority = 1; priority <= 3; priority++) {
+            leftCounters += buffer.countPriority(priority);
+        }
+        for (String size : sizes) {
+            leftCounters += buffer.countSize(size);
+        }
+        boolean ok = lost == 0 && duplicates == 0 && foreign == 0 && leftCounters == 0;
+        System.out.printf("round %d: %d producers x %d parcels, capacity %d -> lost %d, duplicated %d, unknown %d, "
+                + "counters left %d, %d full retries, %.0f parcels/s %s%n",
+            round, producers, parcelsPerProducer, capacity, lost, duplicates, foreign, leftCounters,
+            fullRetries.get(), total * 1e9 / Math.max(1, elapsed), ok ? "OK" : "FAIL");
+        return ok;
+    }
+
+    private static boolean anyAlive(Thread[] workers) {
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
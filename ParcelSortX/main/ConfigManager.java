@@ -9,6 +9,25 @@ public class ConfigManager {
     private int parcelPerTickMax;
     private double misroutingRate;
     private String[] cityList;
+    private String arrivalBufferMode = "LINKED"; // LINKED, RING, CONCURRENT or PRIORITY
+    private int priorityAgingTicks = 0; // PRIORITY mode only, 0 disables aging
+    private String overflowPolicy = "DISCARD"; // DISCARD or SPILL
+    private String spillFile = "arrival_spill.seg";
+    private int spillSegmentBytes = 1 << 20;
+    private String sorterQueueMode = "FIFO"; // FIFO or PRIORITY (per-city dispatch order)
+    private int sorterLockStripes = 0;       // 0 -> single-threaded sorter, >0 -> striped city locks
+    private String trackerBackend = "CHAINED"; // CHAINED or OPEN_ADDRESSING (ParcelTracker lookup table)
+    private String historyLogFile = "";      // empty -> status history stays in memory only
+    private String latencyHistogramFile = ""; // empty -> dwell histogram is not kept across runs
+    private String archiveFile = "";         // empty -> no tiering, every parcel stays in memory
+    private int archiveIdleTicks = 20;       // ticks a parcel stays DISPATCHED in memory before it is archived
+    private String walFile = "";             // empty -> no write-ahead log (tracker state lost on a crash)
+    private int walFsyncBatch = 256;         // changes per group commit (fsync)
+    private int snapshotIntervalTicks = 0;   // >0 -> snapshot every N ticks (recovery replays the log after it)
+    private String snapshotFile = "parcel_tracker_state.snap"; // binary ParcelTracker snapshot
+    private boolean textStateExport = true;  // also convert the snapshot to parcel_tracker_state.txt
+    private int[] retryBackoff = new int[0]; // ticks before the 1st, 2nd ... retry, empty -> ReturnStack every 3 ticks
+    private int truckCapacity = 0;           // units per truck load (Small=1, Medium=2, Large=4), 0 -> one parcel per tick
 
     public ConfigManager(String filePath) throws IOException {
         loadConfig(filePath);
@@ -65,6 +84,67 @@ public class ConfigManager {
                         cityList = resized;
                     }
                     break;
+                case "ARRIVAL_BUFFER_MODE":
+                    arrivalBufferMode = value.toUpperCase();
+                    break;
+                case "PRIORITY_AGING_TICKS":
+                    priorityAgingTicks = Integer.parseInt(value);
+                    break;
+                case "OVERFLOW_POLICY":
+                    overflowPolicy = value.toUpperCase();
+                    break;
+                case "SPILL_FILE":
+                    spillFile = value;
+                    break;
+                case "SPILL_SEGMENT_BYTES":
+                    spillSegmentBytes = Integer.parseInt(value);
+                    break;
+                case "SORTER_QUEUE_MODE":
+                    sorterQueueMode = value.toUpperCase();
+                    break;
+                case "SORTER_LOCK_STRIPES":
+                    sorterLockStripes = Integer.parseInt(value);
+                    break;
+                case "TRACKER_BACKEND":
+                    trackerBackend = value.toUpperCase();
+                    break;
+                case "HISTORY_LOG_FILE":
+                    historyLogFile = value;
+                    break;
+                case "LATENCY_HISTOGRAM_FILE":
+                    latencyHistogramFile = value;
+                    break;
+                case "ARCHIVE_FILE":
+                    archiveFile = value;
+                    break;
+                case "ARCHIVE_IDLE_TICKS":
+                    archiveIdleTicks = Integer.parseInt(value);
+                    break;
+                case "WAL_FILE":
+                    walFile = value;
+                    break;
+                case "WAL_FSYNC_BATCH":
+                    walFsyncBatch = Integer.parseInt(value);
+                    break;
+                case "SNAPSHOT_INTERVAL_TICKS":
+                    snapshotIntervalTicks = Integer.parseInt(value);
+                    break;
+                case "SNAPSHOT_FILE":
+                    snapshotFile = value;
+                    break;
+                case "TEXT_STATE_EXPORT":
+                    textStateExport = Boolean.parseBoolean(value);
+                    break;
+                case "RETRY_BACKOFF":
+                    String[] steps = value.isEmpty() ? new String[0] : value.split(",");
+                    retryBackoff = new int[steps.length];
+                    for (int i = 0; i < steps.length; i++) {
+                        retryBackoff[i] = Integer.parseInt(steps[i].trim());
+                    }
+                    break;
+                case "TRUCK_CAPACITY":
+                    truckCapacity = Integer.parseInt(value);
+                    break;
                 default:
                     System.err.println("Unknown config key: " + key);
             }
@@ -101,4 +181,80 @@ public class ConfigManager {
     public String[] getCityList() {
         return cityList;
     }
+
+    public String getArrivalBufferMode() {
+        return arrivalBufferMode;
+    }
+
+    public int getPriorityAgingTicks() {
+        return priorityAgingTicks;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public String getSpillFile() {
+        return spillFile;
+    }
+
+    public int getSpillSegmentBytes() {
+        return spillSegmentBytes;
+    }
+
+    public String getSorterQueueMode() {
+        return sorterQueueMode;
+    }
+
+    public int getSorterLockStripes() {
+        return sorterLockStripes;
+    }
+
+    public String getTrackerBackend() {
+        return trackerBackend;
+    }
+
+    public String getHistoryLogFile() {
+        return historyLogFile;
+    }
+
+    public String getLatencyHistogramFile() {
+        return latencyHistogramFile;
+    }
+
+    public String getArchiveFile() {
+        return archiveFile;
+    }
+
+    public int getArchiveIdleTicks() {
+        return archiveIdleTicks;
+    }
+
+    public String getWalFile() {
+        return walFile;
+    }
+
+    public int getWalFsyncBatch() {
+        return walFsyncBatch;
+    }
+
+    public int getSnapshotIntervalTicks() {
+        return snapshotIntervalTicks;
+    }
+
+    public String getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public boolean isTextStateExport() {
+        return textStateExport;
+    }
+
+    public int[] getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public int getTruckCapacity() {
+        return truckCapacity;
+    }
 }
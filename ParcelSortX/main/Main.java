@@ -1,6 +1,13 @@
 package main;
 
 import data_sturcts.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 
@@ -22,15 +29,47 @@ public class Main {
             int parcelMax = config.getParcelPerTickMax();
             double misroutingRate = config.getMisroutingRate();
             String[] cityList = config.getCityList();
+            int truckCapacity = config.getTruckCapacity();
 
             // 2. Yapıları başlat
             ParcelGenerator generator = new ParcelGenerator(cityList, parcelMin, parcelMax);
-            ArrivalBuffer arrivalBuffer = new ArrivalBuffer(queueCapacity);
-            DestinationSorter destinationSorter = new DestinationSorter();
+            ArrivalBuffer arrivalBuffer = switch (config.getArrivalBufferMode()) {
+                case "RING" -> new RingArrivalBuffer(queueCapacity);
+                case "CONCURRENT" -> new ConcurrentArrivalBuffer(queueCapacity);
+                case "PRIORITY" -> new PriorityArrivalBuffer(queueCapacity, config.getPriorityAgingTicks());
+                default -> new ArrivalBuffer(queueCapacity);
+            };
+            if (config.getOverflowPolicy().equals("SPILL")) {
+                arrivalBuffer.enableSpill(new SpillSegment(config.getSpillFile(), config.getSpillSegmentBytes()));
+            }
+            DestinationSorter destinationSorter = new DestinationSorter(
+                DestinationSorter.QueueMode.valueOf(config.getSorterQueueMode()),
+                config.getSorterLockStripes());
             TerminalRotator terminalRotator = new TerminalRotator(terminalRotationInterval);
             terminalRotator.initializeFromCityList(cityList);
             ReturnStack returnStack = new ReturnStack();
-            ParcelTracker parcelTracker = new ParcelTracker();
+            RetryScheduler retryScheduler = null; // RETRY_BACKOFF set -> returns are retried by due tick, not popped every 3 ticks
+            if (config.getRetryBackoff().length > 0) {
+                retryScheduler = new RetryScheduler(config.getRetryBackoff(), 0);
+            }
+            ParcelTracker parcelTracker = new ParcelTracker(
+                ParcelTracker.Backend.valueOf(config.getTrackerBackend()));
+            String walFile = config.getWalFile();
+            if (!walFile.isEmpty() && WriteAheadLog.needsRecovery(walFile)) {
+                // previous run did not close its log -> rebuild its tracker before anything is overwritten
+                ParcelTracker recovered = ParcelTracker.recover(config.getSnapshotFile(), walFile);
+                recovered.exportToFile("parcel_tracker_recovered.txt");
+                recovered.closeArchive();
+                System.out.println("Recovered tracker state of the interrupted run ("
+                    + recovered.countParcels(null, null, 0) + " parcels) -> parcel_tracker_recovered.txt");
+            }
+            if (!config.getArchiveFile().isEmpty()) {
+                parcelTracker.enableTiering(config.getArchiveFile(), config.getArchiveIdleTicks());
+            }
+            if (!walFile.isEmpty()) {
+                parcelTracker.enableWal(walFile, config.getWalFsyncBatch());
+            }
+            parcelTracker.registerCities(cityList);
 
             // Distribution counters
             int highPriorityCount = 0;
@@ -41,11 +80,20 @@ public class Main {
             int largeSizeCount = 0;
 
             FileWriter logWriter = new FileWriter("log.txt");
+            DataOutputStream historyStream = null; // binary status history, streamed every tick
+            if (!config.getHistoryLogFile().isEmpty()) {
+                historyStream = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(config.getHistoryLogFile())));
+            }
             FileWriter reportWriter = new FileWriter("report.txt");
 
+            Parcel[] sortBatch = new Parcel[2]; // parcels moved from the queue to the BST per tick
+
             int tick = 0;
             int maxQueueSize = 0;
             int maxStackSize = 0;
+            int truckLoads = 0;
+            int truckUnitsUsed = 0;
 
             while (tick < maxTicks) {
                 tick++;
@@ -71,24 +119,24 @@ public class Main {
                 String[] sortedParcelIDs = new String[newParcels.length];
                 int sortedCount = 0;  // Keep track of how many parcels we've sorted
                 
-                for (Parcel p : newParcels) {
-                    boolean added = arrivalBuffer.enqueue(p);
-                    if (added) {
-                        ParcelGenerator.incrementSuccessfullyEnqueuedCount();
-                        parcelTracker.insert(p.getParcelID(), ParcelTracker.ParcelStatus.IN_QUEUE, p.getArrivalTick(), p.getDestinationCity(), p.getPriority(), p.getSize());
-                        newParcelLog.append(String.format("%s to %s (Priority %d), ", p.getParcelID(), p.getDestinationCity(), p.getPriority()));
-                        
-                        // Update distribution counters
-                        switch(p.getPriority()) {
-                            case 1 -> lowPriorityCount++;
-                            case 2 -> mediumPriorityCount++;
-                            case 3 -> highPriorityCount++;
-                        }
-                        switch(p.getSize()) {
-                            case "Small" -> smallSizeCount++;
-                            case "Medium" -> mediumSizeCount++;
-                            case "Large" -> largeSizeCount++;
-                        }
+                // Toplu ekleme: accepted parcels are always the first `accepted` ones
+                int accepted = arrivalBuffer.enqueueAll(newParcels);
+                for (int n = 0; n < accepted; n++) {
+                    Parcel p = newParcels[n];
+                    ParcelGenerator.incrementSuccessfullyEnqueuedCount();
+                    parcelTracker.insert(p.getParcelID(), ParcelTracker.ParcelStatus.IN_QUEUE, p.getArrivalTick(), p.getDestinationCity(), p.getPriority(), p.getSize());
+                    newParcelLog.append(String.format("%s to %s (Priority %d), ", p.getParcelID(), p.getDestinationCity(), p.getPriority()));
+                    
+                    // Update distribution counters
+                    switch(p.getPriority()) {
+                        case 1 -> lowPriorityCount++;
+                        case 2 -> mediumPriorityCount++;
+                        case 3 -> highPriorityCount++;
+                    }
+                    switch(p.getSize()) {
+                        case "Small" -> smallSizeCount++;
+                        case "Medium" -> mediumSizeCount++;
+                        case "Large" -> largeSizeCount++;
                     }
                 }
                 if (newParcelLog.length() > 0) {
@@ -96,13 +144,12 @@ public class Main {
                     logWriter.write("New Parcels: " + newParcelLog + "\n");
                 }
 
-                // Process parcels
-                int parcelsToProcess = Math.min(arrivalBuffer.size(), 2);
+                // Process parcels (drain + one tree lookup per city)
+                int parcelsToProcess = arrivalBuffer.drainTo(sortBatch, sortBatch.length);
+                destinationSorter.insertBatch(sortBatch, parcelsToProcess);
                 for (int i = 0; i < parcelsToProcess; i++) {
-                    if (arrivalBuffer.isEmpty()) break;
-                    
-                    Parcel p = arrivalBuffer.dequeue();
-                    destinationSorter.insertParcel(p);
+                    Parcel p = sortBatch[i];
+                    sortBatch[i] = null;
                     parcelTracker.updateStatus(p.getParcelID(), ParcelTracker.ParcelStatus.SORTED);
                     if (sortedCount < sortedParcelIDs.length) {
                         sortedParcelIDs[sortedCount++] = p.getParcelID();
@@ -151,28 +198,68 @@ public class Main {
 
                 // Aktif terminal ve dispatch
                 String activeCity = terminalRotator.getActiveTerminal();
-                Parcel nextParcel = destinationSorter.getNextParcelForCity(activeCity);
-                if (nextParcel != null) {
+                Parcel[] dispatched;
+                if (truckCapacity > 0) {
+                    // whole truck load in one call, misrouting is still decided per parcel
+                    dispatched = destinationSorter.dispatchLoad(activeCity, truckCapacity);
+                    if (dispatched.length > 0) {
+                        int units = 0;
+                        for (Parcel p : dispatched) {
+                            units += DestinationSorter.sizeWeight(p.getSize());
+                        }
+                        truckLoads++;
+                        truckUnitsUsed += units;
+                        logWriter.write(String.format("Truck Load: %d parcel(s), %d/%d units for %s\n",
+                            dispatched.length, units, truckCapacity, activeCity));
+                    }
+                } else {
+                    Parcel next = destinationSorter.getNextParcelForCity(activeCity);
+                    if (next != null) {
+                        destinationSorter.removeParcel(activeCity, next.getParcelID());
+                        dispatched = new Parcel[] { next };
+                    } else {
+                        dispatched = new Parcel[0];
+                    }
+                }
+                for (Parcel nextParcel : dispatched) {
                     boolean misrouted = Math.random() < misroutingRate;
                     if (misrouted) {
-                        returnStack.push(nextParcel);
+                        // taken off the belt, it comes back through the retry scheduler / ReturnStack
                         parcelTracker.updateStatus(nextParcel.getParcelID(), ParcelTracker.ParcelStatus.RETURNED);
                         parcelTracker.incrementReturnCount(nextParcel.getParcelID());
                         parcelTracker.incrementTotalReturnedParcels(); 
-                        maxStackSize = Math.max(maxStackSize, returnStack.size());
-                        logWriter.write(String.format("Returned: %s misrouted -> Pushed to ReturnStack\n", nextParcel.getParcelID()));
+                        if (retryScheduler != null) {
+                            int dueTick = retryScheduler.schedule(nextParcel, tick);
+                            logWriter.write(dueTick < 0
+                                ? String.format("Returned: %s misrouted -> Retry limit reached, removed\n", nextParcel.getParcelID())
+                                : String.format("Returned: %s misrouted -> Retry scheduled at tick %d\n", nextParcel.getParcelID(), dueTick));
+                        } else {
+                            returnStack.push(nextParcel);
+                            maxStackSize = Math.max(maxStackSize, returnStack.size());
+                            logWriter.write(String.format("Returned: %s misrouted -> Pushed to ReturnStack\n", nextParcel.getParcelID()));
+                        }
                         
                     } else {
-                        // Remove the parcel and update status - removeParcel handles the counting
-                        destinationSorter.removeParcel(activeCity, nextParcel.getParcelID());
                         parcelTracker.updateStatus(nextParcel.getParcelID(), ParcelTracker.ParcelStatus.DISPATCHED);
                         logWriter.write(String.format("Dispatched: %s from BST to %s -> Success\n", nextParcel.getParcelID(), activeCity));
                     }
                 }
 
            
-                // ReturnStack yeniden işleme (her 3 tickte bir)
-                if (tick % 3 == 0 && !returnStack.isEmpty()) {
+                // Yeniden işleme: every due retry in one batch, or the ReturnStack every 3 ticks
+                if (retryScheduler != null) {
+                    Parcel[] due = retryScheduler.advance(tick);
+                    if (due.length > 0) {
+                        destinationSorter.insertBatch(due, due.length);
+                        StringBuilder retryLog = new StringBuilder();
+                        for (Parcel returned : due) {
+                            parcelTracker.updateStatus(returned.getParcelID(), ParcelTracker.ParcelStatus.SORTED);
+                            retryLog.append(returned.getParcelID()).append(", ");
+                        }
+                        retryLog.setLength(retryLog.length() - 2);
+                        logWriter.write("Reprocessed from RetryScheduler: " + retryLog + "\n");
+                    }
+                } else if (tick % 3 == 0 && !returnStack.isEmpty()) {
                     Parcel returned = returnStack.pop();
                     destinationSorter.insertParcel(returned);
                     parcelTracker.updateStatus(returned.getParcelID(), ParcelTracker.ParcelStatus.SORTED);
@@ -191,7 +278,11 @@ public class Main {
 
                 // Tick log üzeti
                 logWriter.write("Active Terminal: " + newTerminal + "\n");
-                logWriter.write("ReturnStack Size: " + returnStack.size() + "\n");
+                if (retryScheduler != null) {
+                    logWriter.write("Retries Pending: " + retryScheduler.size() + "\n");
+                } else {
+                    logWriter.write("ReturnStack Size: " + returnStack.size() + "\n");
+                }
 
                 for (String city : cityList) {
                     int count = destinationSorter.countCityParcels(city);
@@ -204,11 +295,25 @@ public class Main {
                     arrivalBuffer.visualizeSystemState(destinationSorter, returnStack, newTerminal);
                 }
 
-                
+                if (historyStream != null) {
+                    parcelTracker.streamHistory(historyStream);
+                }
+                if (config.getSnapshotIntervalTicks() > 0 && tick % config.getSnapshotIntervalTicks() == 0) {
+                    parcelTracker.writeSnapshot(config.getSnapshotFile());
+                }
+            }
+            if (historyStream != null) {
+                historyStream.close();
             }
 
-            // Export final state to file
-            parcelTracker.exportToFile("parcel_tracker_state.txt");
+            // Export final state: binary snapshot, text dump converted from it on request
+            parcelTracker.writeSnapshot(config.getSnapshotFile());
+            if (config.isTextStateExport()) {
+                ParcelTracker.convertSnapshotToText(config.getSnapshotFile(), "parcel_tracker_state.txt");
+            }
+            parcelTracker.closeArchive();
+            String walStatistics = parcelTracker.getWal() != null ? parcelTracker.getWal().getStatistics() : null;
+            parcelTracker.closeWal();
             logWriter.close();
             
             // Final statistics
@@ -216,20 +321,57 @@ public class Main {
             reportWriter.write("Total Ticks Executed: " + maxTicks + "\n");
             reportWriter.write(parcelTracker.getStatistics());
             reportWriter.write("Most Frequently Targeted Destination: "+ parcelTracker.getCityWithMaxDispatches() + "\n");
+            reportWriter.write("Dispatched Parcels by Size (in memory): " + parcelTracker.query()
+                .status(ParcelTracker.ParcelStatus.DISPATCHED).groupBy(ParcelQuery.Field.SIZE) + "\n");
             reportWriter.write("\n=== Timing and Delay Metrics===\n");
             reportWriter.write(parcelTracker.getTimingStats());
+            if (!config.getLatencyHistogramFile().isEmpty()) {
+                // histograms merge by adding buckets -> keep one file growing over all runs
+                File histogramFile = new File(config.getLatencyHistogramFile());
+                LatencyHistogram acrossRuns = new LatencyHistogram();
+                if (histogramFile.exists()) {
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(histogramFile)))) {
+                        acrossRuns = LatencyHistogram.readFrom(in);
+                    }
+                }
+                acrossRuns.merge(parcelTracker.getDwellHistogram());
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(histogramFile)))) {
+                    acrossRuns.writeTo(out);
+                }
+                reportWriter.write("Dwell Time Across Runs: " + acrossRuns.summary() + "\n\n");
+            }
             reportWriter.write("=== Data Structers Statistics ===\n" );
             reportWriter.write("Maximum Queue Size Observed: "+ maxQueueSize+"\n");
-            reportWriter.write("Maximum Stack Size observed:"+ maxStackSize+"\n");           
+            if (retryScheduler != null) {
+                reportWriter.write("Retry Scheduler: " + retryScheduler.getStatistics() + "\n");
+            } else {
+                reportWriter.write("Maximum Stack Size observed:"+ maxStackSize+"\n");
+            }           
             reportWriter.write("Final Height Of BST: "+ destinationSorter.getHeight()+"\n");
             reportWriter.write("Total Parcels in BST: "+ destinationSorter.getTotalParcels()+"\n"); 
             reportWriter.write("BST Balance Check: " + (destinationSorter.verifyBalance() ? "Balanced" : "Unbalanced (or check logs for details)") + "\n");         
+            if (truckCapacity > 0) {
+                reportWriter.write(String.format("Truck Loads Dispatched: %d (average fill %.1f%% of %d units)\n",
+                    truckLoads, truckLoads == 0 ? 0.0 : 100.0 * truckUnitsUsed / (truckLoads * (double) truckCapacity),
+                    truckCapacity));
+            }
+            if (walStatistics != null) {
+                reportWriter.write("Write-Ahead Log: " + walStatistics + "\n");
+            }
             reportWriter.write("Hash Table Load Factor: " + String.format("%.2f", parcelTracker.getLoadFactor())+"\n");                
+            if (arrivalBuffer.getSpill() != null) {
+                reportWriter.write("\n=== Arrival Buffer Spill Segment ===\n");
+                reportWriter.write(arrivalBuffer.getSpill().getStatistics());
+                arrivalBuffer.getSpill().close();
+            }
             reportWriter.close();
             
             
             System.out.println("\nSimulation completed. Check log.txt for details.");
-            System.out.println("Parcel tracker state exported to parcel_tracker_state.txt");
+            System.out.println("Parcel tracker snapshot written to " + config.getSnapshotFile());
+            if (config.isTextStateExport()) {
+                System.out.println("Parcel tracker state exported to parcel_tracker_state.txt");
+            }
 
         } catch (IOException e) {
             System.err.println("Failed to load config or write files: " + e.getMessage());
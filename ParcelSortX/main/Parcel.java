@@ -36,6 +36,10 @@ public class Parcel {
         return destinationCity;
     }
 
+    public void setDestinationCity(String destinationCity) {
+        this.destinationCity = destinationCity;
+    }
+
     public int getPriority() {
         return priority;
     }
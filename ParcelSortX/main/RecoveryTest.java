@@ -0,0 +1,127 @@
+package main;
+
+import data_sturcts.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Crash recovery check of the ParcelTracker (snapshot + write-ahead log + archive)::
+// run 1 writes a snapshot and closes cleanly, run 2 starts a new log on the same archive
+// file and "crashes" (log and archive are never closed). Recovery must ignore the stale
+// snapshot, rebuild run 2 from its log alone and leave run 2's archive file untouched,
+// whether that archive ended up shorter or longer than the one the snapshot remembers.
+// A snapshot written during the crashed run itself must still be used.
+// Exit code 1 on any failure.
+// Usage: java main.RecoveryTest [directory]
+public class RecoveryTest {
+    private static final String[] CITIES = {"Istanbul", "Ankara", "Izmir", "Bursa", "Antalya"};
+
+    public static void main(String[] args) throws IOException {
+        Path dir = args.length > 0 ? Path.of(args[0]) : Files.createTempDirectory("recovery");
+        Logger.getLogger("").setLevel(Level.OFF);
+
+        boolean passed = true;
+        passed &= staleSnapshot(dir, 40, "new archive shorter than the snapshot's");
+        passed &= staleSnapshot(dir, 400, "new archive longer than the snapshot's");
+        passed &= sameRunSnapshot(dir);
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean staleSnapshot(Path dir, int secondRunParcels, String name) throws IOException {
+        String archive = dir.resolve("arch.bin").toString();
+        String snapshot = dir.resolve("s.snap").toString();
+        String wal = dir.resolve("w.log").toString();
+
+        // run 1: snapshot + clean shutdown
+        ParcelTracker first = newRun(archive, wal);
+        fill(first, "A", 200);
+        first.writeSnapshot(snapshot);
+        first.closeWal();
+        first.closeArchive();
+
+        // run 2: new log, same archive file, crash
+        ParcelTracker second = newRun(archive, wal);
+        fill(second, "B", secondRunParcels);
+        second.getWal().commit();
+        long archiveBytes = Files.size(Path.of(archive));
+        int expected = second.countParcels(null, null, 0); // live + archived
+
+        boolean ok;
+        String result;
+        try {
+            ParcelTracker recovered = ParcelTracker.recover(snapshot, wal);
+            int parcels = recovered.countParcels(null, null, 0);
+            long after = Files.size(Path.of(archive));
+            ok = parcels == expected && after == archiveBytes && !recovered.exists("A-0")
+                && recovered.exists("B-0");
+            recovered.closeArchive();
+            result = String.format("%d parcels (expected %d), archive %d -> %d bytes", parcels, expected,
+                archiveBytes, after);
+        } catch (IOException | RuntimeException e) {
+            ok = false;
+            result = e.toString();
+        }
+        second.closeArchive();
+        System.out.printf("stale snapshot, %s: %s %s%n", name, result, ok ? "OK" : "FAIL");
+        return ok;
+    }
+
+    private static boolean sameRunSnapshot(Path dir) throws IOException {
+        String archive = dir.resolve("arch.bin").toString();
+        String snapshot = dir.resolve("s.snap").toString();
+        String wal = dir.resolve("w.log").toString();
+
+        ParcelTracker run = newRun(archive, wal);
+        fill(run, "C", 200);
+        run.writeSnapshot(snapshot);
+        fill(run, "D", 100); // after the snapshot -> only in the log
+        run.getWal().commit();
+        int expected = run.countParcels(null, null, 0); // live + archived
+
+        boolean ok;
+        String result;
+        try {
+            ParcelTracker recovered = ParcelTracker.recover(snapshot, wal);
+            int parcels = recovered.countParcels(null, null, 0);
+            int dispatched = recovered.countStatus(ParcelTracker.ParcelStatus.DISPATCHED);
+            ok = parcels == expected && dispatched == run.countStatus(ParcelTracker.ParcelStatus.DISPATCHED)
+                && recovered.exists("C-0") && recovered.exists("D-99");
+            recovered.closeArchive();
+            result = String.format("%d parcels (expected %d), %d dispatched", parcels, expected, dispatched);
+        } catch (IOException | RuntimeException e) {
+            ok = false;
+            result = e.toString();
+        }
+        run.closeArchive();
+        System.out.printf("snapshot of the crashed run: %s %s%n", result, ok ? "OK" : "FAIL");
+        return ok;
+    }
+
+    private static ParcelTracker newRun(String archive, String wal) throws IOException {
+        ParcelTracker tracker = new ParcelTracker();
+        tracker.enableTiering(archive, 0);
+        tracker.enableWal(wal, 16);
+        tracker.registerCities(CITIES);
+        return tracker;
+    }
+
+    // half of the parcels are dispatched and moved to the archive on the next tick
+    private static void fill(ParcelTracker tracker, String prefix, int parcels) {
+        int tick = tracker.getCurrentTick();
+        for (int i = 0; i < parcels; i++) {
+            tick++;
+            tracker.setCurrentTick(tick);
+            tracker.insert(prefix + "-" + i, ParcelTracker.ParcelStatus.IN_QUEUE, tick,
+                CITIES[i % CITIES.length], 1 + i % 3, "Small");
+            if (i % 2 == 1) {
+                tracker.updateStatus(prefix + "-" + (i - 1), ParcelTracker.ParcelStatus.DISPATCHED);
+            }
+        }
+        tracker.setCurrentTick(tick + 1);
+    }
+}
@@ -0,0 +1,76 @@
+package main;
+
+import data_sturcts.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Throughput of the DestinationSorter with 1..N sort/dispatch workers::
+// every worker inserts parcels for all cities and dispatches (peek + remove) them again.
+// Usage: java main.SorterBenchmark [maxThreads] [parcelsPerThread] [cities] [lockStripes]
+public class SorterBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int parcelsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int cityCount = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int lockStripes = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        if (lockStripes == 0) {
+            maxThreads = 1; // the single-threaded sorter must not be shared
+        }
+        Logger.getLogger("").setLevel(Level.OFF); // per-parcel log lines would dominate the timing
+
+        String[] cities = new String[cityCount];
+        for (int i = 0; i < cityCount; i++) {
+            cities[i] = "City" + i;
+        }
+
+        System.out.println("threads  parcels/s  (stripes=" + lockStripes + ", cities=" + cityCount + ")");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            runRound(threads, parcelsPerThread / 4, cities, lockStripes); // warm-up
+            long parcelsPerSecond = runRound(threads, parcelsPerThread, cities, lockStripes);
+            System.out.printf("%7d  %9d%n", threads, parcelsPerSecond);
+        }
+    }
+
+    private static long runRound(int threads, int parcelsPerThread, String[] cities, int lockStripes)
+            throws InterruptedException {
+        DestinationSorter sorter = new DestinationSorter(DestinationSorter.QueueMode.FIFO, lockStripes);
+        for (String city : cities) {
+            sorter.insertParcel(new Parcel("W-" + city, city, 1, "Small", 0)); // cities exist before timing
+            sorter.removeParcel(city, "W-" + city);
+        }
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            workers[t] = new Thread(() -> {
+                Parcel[] batch = new Parcel[4];
+                for (int i = 0; i < parcelsPerThread; i += batch.length) {
+                    int n = Math.min(batch.length, parcelsPerThread - i);
+                    for (int j = 0; j < n; j++) {
+                        String city = cities[(worker * 7 + i + j) % cities.length];
+                        batch[j] = new Parcel("T" + worker + "-" + (i + j), city, 1 + (i + j) % 3, "Small", i);
+                    }
+                    sorter.insertBatch(batch, n);
+                    for (int j = 0; j < n; j++) {
+                        String city = batch[j].getDestinationCity();
+                        Parcel next = sorter.getNextParcelForCity(city);
+                        if (next != null) {
+                            sorter.removeParcel(city, next.getParcelID());
+                        }
+                    }
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return (long) threads * parcelsPerThread * 1_000_000_000L / Math.max(1, elapsed);
+    }
+}